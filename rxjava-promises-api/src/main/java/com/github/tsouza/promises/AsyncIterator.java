@@ -0,0 +1,49 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 - Thiago Souza <tcostasouza@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tsouza.promises;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A pull-style iterator over results which become available asynchronously.
+ * It is meant to be consumed by a single consumer at a time.
+ */
+public interface AsyncIterator<R> {
+
+	/**
+	 * Returns a promise fulfilled with {@code true} once {@link #next()} has a result
+	 * ready, or with {@code false} when there are no more results. The promise is
+	 * rejected if the next result is a rejection.
+	 */
+	public Promise<Boolean> hasNext();
+
+	/**
+	 * Returns the next ready result. A rejection is thrown, wrapped in a
+	 * {@link CompletionException} if it is a checked exception.
+	 *
+	 * @throws NoSuchElementException if no result is ready
+	 */
+	public R next();
+}
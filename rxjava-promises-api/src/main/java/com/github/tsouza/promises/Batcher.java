@@ -0,0 +1,157 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 - Thiago Souza <tcostasouza@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tsouza.promises;
+
+import com.github.tsouza.promises.functions.Mapper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces {@link #load(Object)} calls into batched calls of a loader. Loads are collected
+ * until the batch is dispatched: on {@link ThreadProfile#CPU}, by a task scheduled when the
+ * batch was opened or as soon as it reaches its maximum size, or on the calling thread by
+ * {@link #dispatch()}. Identical
+ * keys in a batch share one promise. Keys missing from the loaded map are fulfilled with
+ * {@code null}; if the loader fails, or returns {@code null}, every key of the batch is rejected.
+ *
+ * @see Promises#batcher(Mapper)
+ */
+public final class Batcher<K, V> {
+
+	private final Mapper<List<K>, Promise<Map<K, V>>> loader;
+	private final int maxBatchSize;
+	private final long maxWait;
+	private final TimeUnit unit;
+
+	private Batch<K, V> batch;
+
+	Batcher(Mapper<List<K>, Promise<Map<K, V>>> loader, int maxBatchSize, long maxWait, TimeUnit unit) {
+		if (maxBatchSize <= 0)
+			throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+		if (maxWait < 0)
+			throw new IllegalArgumentException("maxWait must not be negative: " + maxWait);
+		this.loader = loader;
+		this.maxBatchSize = maxBatchSize;
+		this.maxWait = maxWait;
+		this.unit = unit;
+	}
+
+	public Promise<V> load(K key) {
+		Batch<K, V> opened = null, full = null;
+		Deferred<V> deferred;
+		synchronized (this) {
+			if (batch == null)
+				batch = opened = new Batch<>();
+			deferred = batch.keys.get(key);
+			if (deferred == null) {
+				batch.keys.put(key, deferred = Promises.deferred());
+				if (batch.keys.size() >= maxBatchSize) {
+					full = batch;
+					batch = null;
+				}
+			}
+		}
+		if (full != null) {
+			Batch<K, V> dispatched = full;
+			Promises.execute(() -> dispatched.dispatch(loader), ThreadProfile.CPU);
+		} else if (opened != null)
+			schedule(opened);
+		return deferred.promise();
+	}
+
+	public Promise<List<V>> loadAll(Collection<K> keys) {
+		List<Object> promises = new ArrayList<>(keys.size());
+		for (K key : keys)
+			promises.add(load(key));
+		return Promises.all(promises);
+	}
+
+	/**
+	 * Dispatches the pending batch now, if any.
+	 */
+	public void dispatch() {
+		Batch<K, V> pending;
+		synchronized (this) {
+			pending = batch;
+			batch = null;
+		}
+		if (pending != null)
+			pending.dispatch(loader);
+	}
+
+	private void schedule(Batch<K, V> opened) {
+		Runnable dispatch = () -> {
+			synchronized (this) {
+				if (batch != opened)
+					return;
+				batch = null;
+			}
+			opened.dispatch(loader);
+		};
+		if (maxWait == 0)
+			Promises.execute(dispatch, ThreadProfile.CPU);
+		else
+			Promises.delay(null, maxWait, unit).done(ignored -> Promises.execute(dispatch, ThreadProfile.CPU), null);
+	}
+
+	private static final class Batch<K, V> {
+
+		final Map<K, Deferred<V>> keys = new LinkedHashMap<>();
+
+		void dispatch(Mapper<List<K>, Promise<Map<K, V>>> loader) {
+			List<K> requested = new ArrayList<>(keys.size());
+			for (Map.Entry<K, Deferred<V>> entry : keys.entrySet())
+				if (!entry.getValue().promise().isCancelled())
+					requested.add(entry.getKey());
+			if (requested.isEmpty())
+				return;
+
+			Promise<Map<K, V>> loaded;
+			try {
+				loaded = loader.map(requested);
+			} catch (Throwable e) {
+				reject(e);
+				return;
+			}
+			if (loaded == null) {
+				reject(new NullPointerException("batch loader returned null for " + requested));
+				return;
+			}
+			loaded.done(values -> {
+				for (Map.Entry<K, Deferred<V>> entry : keys.entrySet())
+					entry.getValue().resolver().resolve(values == null ? null : values.get(entry.getKey()));
+			}, this::reject);
+		}
+
+		private void reject(Throwable reason) {
+			for (Deferred<V> deferred : keys.values())
+				deferred.resolver().reject(reason);
+		}
+	}
+}
@@ -27,7 +27,10 @@ import com.github.tsouza.promises.functions.*;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static com.github.tsouza.promises.Promises.resolve;
 
@@ -43,6 +46,27 @@ public interface Promise<R> extends PromiseOrValue<R> {
 
 	public Promise<R> tap(Mapper<R, Promise<?>> mapper);
 
+	/**
+	 * Like {@link #then(Mapper)}, but {@code mapper} runs on {@code profile} rather than on
+	 * whichever thread settles this promise. A {@code null} result fulfills with {@code null}.
+	 */
+	public default <NR> Promise<NR> thenAsync(Mapper<R, PromiseOrValue<NR>> mapper, ThreadProfile profile) {
+		return then(success -> Promises.defer((Resolver<NR> resolver) ->
+				resolver.chain(Promises.<NR>resolve((Object) mapper.map(success))), profile));
+	}
+
+	/**
+	 * Like {@link #fail(Class, Mapper)}, but {@code mapper} runs on {@code profile}.
+	 */
+	public default <T extends Throwable> Promise<R> failAsync(Class<T> exceptionType, Mapper<T, PromiseOrValue<R>> mapper, ThreadProfile profile) {
+		return fail(exceptionType, failure -> Promises.defer((Resolver<R> resolver) ->
+				resolver.chain(Promises.<R>resolve((Object) mapper.map(failure))), profile));
+	}
+
+	public default Promise<R> failAsync(Mapper<Throwable, PromiseOrValue<R>> mapper, ThreadProfile profile) {
+		return failAsync(Throwable.class, mapper, profile);
+	}
+
 	@SuppressWarnings("unchecked")
 	public default <I, O> Promise<List<O>> map(Mapper<I, PromiseOrValue<O>> mapper) {
 		return then(success -> {
@@ -80,6 +104,13 @@ public interface Promise<R> extends PromiseOrValue<R> {
 	}
 
 	public Promise<R> always(Callable<Promise<R>> callable);
+
+	/**
+	 * Returns a promise which settles like this one, or is rejected with a
+	 * {@link java.util.concurrent.TimeoutException} if this one does not settle in time,
+	 * in which case this promise is cancelled when nothing else is waiting on it.
+	 */
+	public Promise<R> timeout(long timeout, TimeUnit unit);
 	
 	public <T1, T2, NR> Promise<NR> spread(Spread.Args2<T1, T2, PromiseOrValue<NR>> spread);
 	public <T1, T2, T3, NR> Promise<NR> spread(Spread.Args3<T1, T2, T3, PromiseOrValue<NR>> spread);
@@ -89,5 +120,50 @@ public interface Promise<R> extends PromiseOrValue<R> {
 	public void done(Receiver<R> success, Receiver<Throwable> failure);
 	public void done(Receiver<R> success);
 
+	/**
+	 * Like {@link #done(Receiver, Receiver)}, but the receivers run on {@code profile}.
+	 */
+	public void doneAsync(Receiver<R> success, Receiver<Throwable> failure, ThreadProfile profile);
+
+	public default void doneAsync(Receiver<R> success, ThreadProfile profile) {
+		doneAsync(success, null, profile);
+	}
+
 	public Future<R> future();
+
+	/**
+	 * Blocks until this promise is settled, returning its result or throwing its rejection
+	 * reason. On a {@link ThreadProfile#VIRTUAL} thread only the virtual thread is parked,
+	 * not its carrier, so sequential blocking code stays cheap.
+	 */
+	public default R await() throws Exception {
+		try {
+			return future().get();
+		} catch (ExecutionException e) {
+			Throwable reason = e.getCause();
+			if (reason instanceof Exception)
+				throw (Exception) reason;
+			if (reason instanceof Error)
+				throw (Error) reason;
+			throw e;
+		}
+	}
+
+	/**
+	 * Links this promise to a {@link CompletionStage} by callback: no thread hop and no
+	 * blocking. Cancelling the returned stage cancels this promise, unless something
+	 * else is also waiting on it.
+	 */
+	public CompletionStage<R> toCompletionStage();
+
+	/**
+	 * Cancels this promise, rejecting it with a {@link java.util.concurrent.CancellationException}.
+	 * Cancellation propagates upstream to the promise (or deferred task) this one is waiting
+	 * on, unless something else is also waiting on it.
+	 *
+	 * @return {@code false} if this promise was already settled
+	 */
+	public boolean cancel();
+
+	public boolean isCancelled();
 }
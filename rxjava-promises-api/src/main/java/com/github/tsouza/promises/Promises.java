@@ -24,17 +24,19 @@
 package com.github.tsouza.promises;
 
 
-import com.github.tsouza.promises.functions.Callable;
-import com.github.tsouza.promises.functions.Mapper;
-import com.github.tsouza.promises.functions.Receiver;
-import com.github.tsouza.promises.functions.Reducer;
+import com.github.tsouza.promises.functions.*;
 import com.github.tsouza.promises.spi.DeferredManager;
 
 import java.util.*;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 public abstract class Promises {
 
@@ -56,31 +58,31 @@ public abstract class Promises {
 	}
 
 	public static <R> Promise<R> resolve(Future<R> future) {
-		return resolve(future, ThreadProfile.IO);
+		return manager().from(future, null, 0, null);
 	}
 
 	public static <R> Promise<R> resolve(Future<R> future, ThreadProfile profile) {
-		return defer(resolver -> {
-			try {
-				resolver.resolve(future.get());
-			} catch (ExecutionException e) {
-				resolver.reject(e.getCause());
-			}
-		}, profile);
+		return manager().from(future, profile, 0, null);
 	}
 
 	public static <R> Promise<R> resolve(Future<R> future, ThreadProfile profile, long timeout, TimeUnit unit) {
-		return defer(resolver -> {
-			try {
-				resolver.resolve(future.get(timeout, unit));
-			} catch (ExecutionException e) {
-				resolver.reject(e.getCause());
-			}
-		}, profile);
+		return manager().from(future, profile, timeout, unit);
 	}
 
 	public static <R> Promise<R> resolve(Future<R> future, long timeout, TimeUnit unit) {
-		return resolve(future, ThreadProfile.IO, timeout, unit);
+		return manager().from(future, null, timeout, unit);
+	}
+
+	public static <R> Promise<R> from(CompletionStage<R> stage) {
+		return manager().from(stage);
+	}
+
+	public static <R> Promise<R> delay(Object promiseOrValue, long delay, TimeUnit unit) {
+		return manager().delayed(promiseOrValue, delay, unit);
+	}
+
+	public static void register(ThreadProfile profile, Executor executor) {
+		manager().register(profile, executor);
 	}
 
 	public static <R> Value<R> value(R value) {
@@ -101,10 +103,25 @@ public abstract class Promises {
 		return deferred.promise();
 	}
 	
+	/**
+	 * Runs {@code task} on {@code profile}, without a promise to track it.
+	 */
+	public static void execute(Runnable task, ThreadProfile profile) {
+		manager().execute(profile, task);
+	}
+
 	public static <R> Deferred<R> deferred() {
 		return manager().deferred();
 	}
 
+	public static LongDeferred deferredLong() {
+		return manager().deferredLong();
+	}
+
+	public static DoubleDeferred deferredDouble() {
+		return manager().deferredDouble();
+	}
+
 	public static <R> Promise<R> resolve(Callable<PromiseOrValue<R>> callback) {
 		try {
 			return resolve(callback.call());
@@ -123,12 +140,17 @@ public abstract class Promises {
 			return resolve(Collections.emptyList());
 		return defer((Resolver<List<O>> resolver) -> {
 			Object[] result = new Object[promisesOrValues.size()];
+			Promise<?>[] mapped = new Promise<?>[result.length];
 			AtomicInteger replyCount = new AtomicInteger(promisesOrValues.size());
+			resolver.onCancel(() -> cancelAll(mapped));
 			int i = 0;
 			for (Object promiseOrValue : promisesOrValues) {
+				if (resolver.isCancelled())
+					return;
 				final int idx = i;
-				((Promise<I>) resolve(promiseOrValue)).
-					then(mapper::map).done((success) -> {
+				Promise<O> promise = ((Promise<I>) resolve(promiseOrValue)).then(mapper);
+				mapped[idx] = promise;
+				promise.done((success) -> {
 					result[idx] = success;
 					if (replyCount.decrementAndGet() == 0)
 						resolver.resolve((List<O>) Arrays.asList(result));
@@ -138,24 +160,305 @@ public abstract class Promises {
 		});
 	}
 
+	public static <I, O> Promise<List<O>> map(Object[] promisesOrValues, Mapper<I, PromiseOrValue<O>> mapper, int concurrency) {
+		return map(Arrays.asList(promisesOrValues), mapper, concurrency);
+	}
+
+	/**
+	 * Maps like {@link #map(Collection, Mapper)}, but keeps at most {@code concurrency}
+	 * mapper promises in flight. Results are in input order.
+	 */
+	public static <I, O> Promise<List<O>> map(Collection<Object> promisesOrValues, Mapper<I, PromiseOrValue<O>> mapper, int concurrency) {
+		return map(promisesOrValues, mapper, concurrency, true);
+	}
+
+	public static <I, O> Promise<List<O>> mapUnordered(Object[] promisesOrValues, Mapper<I, PromiseOrValue<O>> mapper, int concurrency) {
+		return mapUnordered(Arrays.asList(promisesOrValues), mapper, concurrency);
+	}
+
+	/**
+	 * Maps like {@link #map(Collection, Mapper, int)}, but results are in completion order.
+	 */
+	public static <I, O> Promise<List<O>> mapUnordered(Collection<Object> promisesOrValues, Mapper<I, PromiseOrValue<O>> mapper, int concurrency) {
+		return map(promisesOrValues, mapper, concurrency, false);
+	}
+
+	private static <I, O> Promise<List<O>> map(Collection<Object> promisesOrValues, Mapper<I, PromiseOrValue<O>> mapper,
+											   int concurrency, boolean ordered) {
+		if (concurrency <= 0)
+			throw new IllegalArgumentException("concurrency must be positive: " + concurrency);
+		if (promisesOrValues == null || promisesOrValues.size() == 0)
+			return resolve(Collections.emptyList());
+		Deferred<List<O>> deferred = deferred();
+		new Mapping<>(promisesOrValues.toArray(), mapper, concurrency, ordered, deferred.resolver()).drain();
+		return deferred.promise();
+	}
+
+	public static <R> AsyncIterator<R> stream(Object[] promisesOrValues) {
+		return stream(Arrays.asList(promisesOrValues));
+	}
+
+	/**
+	 * Streams the results of {@code promisesOrValues} in completion order, so the first
+	 * results can be consumed before the slowest one settles.
+	 */
+	public static <R> AsyncIterator<R> stream(Collection<Object> promisesOrValues) {
+		return stream(promisesOrValues, Mapper.noop());
+	}
+
+	public static <I, O> AsyncIterator<O> stream(Object[] promisesOrValues, Mapper<I, PromiseOrValue<O>> mapper) {
+		return stream(Arrays.asList(promisesOrValues), mapper);
+	}
+
+	/**
+	 * Maps like {@link #map(Collection, Mapper)}, but streams the results in completion
+	 * order instead of collecting them into a list.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <I, O> AsyncIterator<O> stream(Collection<Object> promisesOrValues, Mapper<I, PromiseOrValue<O>> mapper) {
+		int size = promisesOrValues == null ? 0 : promisesOrValues.size();
+		Stream<O> stream = new Stream<>(size);
+		if (size > 0)
+			for (Object promiseOrValue : promisesOrValues)
+				((Promise<I>) resolve(promiseOrValue)).then(mapper).
+						done(stream::received, stream::failed);
+		return stream;
+	}
+
 	public static <R> Promise<R> reduce(Object[] promisesOrValues, Reducer<R, PromiseOrValue<R>> reducer, R initialValue) {
 		return reduce(Arrays.asList(promisesOrValues), reducer, initialValue);
 	}
 
-	@SuppressWarnings("unchecked")
 	public static <R> Promise<R> reduce(Iterable<Object> promisesOrValues, Reducer<R, PromiseOrValue<R>> reducer, R initialValue) {
 		if (promisesOrValues == null)
 			return resolve(initialValue);
-		return reduceNext((Iterator<R>) promisesOrValues.iterator(), reducer, initialValue);
+		Deferred<R> deferred = deferred();
+		new Reduction<>(promisesOrValues.iterator(), reducer, initialValue, deferred.resolver()).drive();
+		return deferred.promise();
+	}
+
+	public static LongPromise resolveLong(long value) {
+		return manager().resolvedLong(value);
+	}
+
+	public static DoublePromise resolveDouble(double value) {
+		return manager().resolvedDouble(value);
+	}
+
+	public static LongPromise reduceLong(Object[] promisesOrValues, LongReducer reducer, long initialValue) {
+		return reduceLong(Arrays.asList(promisesOrValues), reducer, initialValue);
+	}
+
+	/**
+	 * Like {@link #reduce(Iterable, Reducer, Object)} over numbers: the accumulator stays a
+	 * primitive throughout and {@link LongPromise}s are read without boxing.
+	 */
+	public static LongPromise reduceLong(Iterable<Object> promisesOrValues, LongReducer reducer, long initialValue) {
+		if (promisesOrValues == null)
+			return resolveLong(initialValue);
+		LongDeferred deferred = manager().deferredLong();
+		new LongReduction(promisesOrValues.iterator(), reducer, initialValue, deferred).drive();
+		return deferred.promise();
+	}
+
+	public static LongPromise sumLong(Object[] promisesOrValues) {
+		return sumLong(Arrays.asList(promisesOrValues));
+	}
+
+	public static LongPromise sumLong(Iterable<Object> promisesOrValues) {
+		return reduceLong(promisesOrValues, (sum, value) -> sum + value, 0);
+	}
+
+	public static DoublePromise reduceDouble(Object[] promisesOrValues, DoubleReducer reducer, double initialValue) {
+		return reduceDouble(Arrays.asList(promisesOrValues), reducer, initialValue);
+	}
+
+	public static DoublePromise reduceDouble(Iterable<Object> promisesOrValues, DoubleReducer reducer, double initialValue) {
+		if (promisesOrValues == null)
+			return resolveDouble(initialValue);
+		DoubleDeferred deferred = manager().deferredDouble();
+		new DoubleReduction(promisesOrValues.iterator(), reducer, initialValue, deferred).drive();
+		return deferred.promise();
+	}
+
+	public static DoublePromise sumDouble(Object[] promisesOrValues) {
+		return sumDouble(Arrays.asList(promisesOrValues));
+	}
+
+	public static DoublePromise sumDouble(Iterable<Object> promisesOrValues) {
+		return reduceDouble(promisesOrValues, (sum, value) -> sum + value, 0);
+	}
+
+	public static <I> Promise<long[]> mapToLong(Object[] promisesOrValues, ToLongMapper<I> mapper) {
+		return mapToLong(Arrays.asList(promisesOrValues), mapper);
+	}
+
+	/**
+	 * Like {@link #map(Collection, Mapper)}, collecting the results into a {@code long[]}.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <I> Promise<long[]> mapToLong(Collection<Object> promisesOrValues, ToLongMapper<I> mapper) {
+		long[] result = new long[promisesOrValues == null ? 0 : promisesOrValues.size()];
+		return collect(promisesOrValues, result, (i, value) -> result[i] = mapper.map((I) value));
+	}
+
+	public static <I> Promise<double[]> mapToDouble(Object[] promisesOrValues, ToDoubleMapper<I> mapper) {
+		return mapToDouble(Arrays.asList(promisesOrValues), mapper);
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <I> Promise<double[]> mapToDouble(Collection<Object> promisesOrValues, ToDoubleMapper<I> mapper) {
+		double[] result = new double[promisesOrValues == null ? 0 : promisesOrValues.size()];
+		return collect(promisesOrValues, result, (i, value) -> result[i] = mapper.map((I) value));
+	}
+
+	/**
+	 * Stores each element into {@code result} through {@code store}, fulfilling with
+	 * {@code result} once all of them are stored. Pending elements are observed through
+	 * stages of their own, which are what cancelling the result cancels.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <A> Promise<A> collect(Collection<Object> promisesOrValues, A result, Store store) {
+		if (promisesOrValues == null || promisesOrValues.isEmpty())
+			return resolve(value(result));
+
+		Deferred<A> deferred = deferred();
+		Resolver<A> resolver = deferred.resolver();
+		Promise<?>[] awaited = new Promise<?>[promisesOrValues.size()];
+		AtomicInteger remaining = new AtomicInteger(awaited.length);
+		resolver.onCancel(() -> cancelAll(awaited));
+
+		int i = 0;
+		for (Object promiseOrValue : promisesOrValues) {
+			int index = i++;
+			Receiver<Object> onValue = value -> {
+				store.store(index, value);
+				if (remaining.decrementAndGet() == 0)
+					resolver.resolve(result);
+			};
+			if (promiseOrValue instanceof Promise) {
+				Promise<Object> stage = ((Promise<Object>) promiseOrValue).then(Promises::value);
+				awaited[index] = stage;
+				stage.done(onValue, resolver::reject);
+			} else
+				try {
+					onValue.receive(promiseOrValue instanceof Value ?
+							((Value<Object>) promiseOrValue).get() : promiseOrValue);
+				} catch (Throwable e) {
+					resolver.reject(e);
+				}
+		}
+		return deferred.promise();
+	}
+
+	@FunctionalInterface
+	private interface Store {
+		void store(int index, Object value) throws Throwable;
+	}
+
+	public static <R> Promise<R> race(Object[] promisesOrValues) {
+		return race(Arrays.asList(promisesOrValues));
+	}
+
+	/**
+	 * Settles like the first of {@code promisesOrValues} to settle, cancelling the others.
+	 * Rejected with an {@link IllegalArgumentException} when there are no inputs, as when
+	 * {@code promisesOrValues} is {@code null}.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <R> Promise<R> race(Collection<Object> promisesOrValues) {
+		return (Promise<R>) new Contest(promisesOrValues, 1, Contest.RACE).start();
+	}
+
+	public static <R> Promise<R> any(Object[] promisesOrValues) {
+		return any(Arrays.asList(promisesOrValues));
+	}
+
+	/**
+	 * Fulfills with the first of {@code promisesOrValues} to be fulfilled, cancelling the
+	 * others; rejected with an {@link AggregateException} if all of them are rejected.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <R> Promise<R> any(Collection<Object> promisesOrValues) {
+		return (Promise<R>) new Contest(promisesOrValues, 1, Contest.ANY).start();
+	}
+
+	public static <R> Promise<List<R>> some(int count, Object[] promisesOrValues) {
+		return some(count, Arrays.asList(promisesOrValues));
+	}
+
+	/**
+	 * Fulfills with the first {@code count} results of {@code promisesOrValues}, in completion
+	 * order, cancelling the others. Rejected with an {@link AggregateException} as soon as
+	 * too many inputs are rejected for {@code count} of them to be fulfilled.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <R> Promise<List<R>> some(int count, Collection<Object> promisesOrValues) {
+		if (count <= 0)
+			throw new IllegalArgumentException("count must be positive: " + count);
+		return (Promise<List<R>>) new Contest(promisesOrValues, count, Contest.SOME).start();
+	}
+
+	public static <R> Promise<SettledResults<R>> allSettled(Object[] promisesOrValues) {
+		return allSettled(Arrays.asList(promisesOrValues));
+	}
+
+	/**
+	 * Fulfills once every element of {@code promisesOrValues} is settled, with the outcome of
+	 * each one. Never rejected, unless cancelled.
+	 */
+	public static <R> Promise<SettledResults<R>> allSettled(Collection<Object> promisesOrValues) {
+		return allSettled(promisesOrValues, Mapper.noop());
+	}
+
+	public static <I, O> Promise<SettledResults<O>> allSettled(Object[] promisesOrValues, Mapper<I, PromiseOrValue<O>> mapper) {
+		return allSettled(Arrays.asList(promisesOrValues), mapper);
+	}
+
+	/**
+	 * Like {@link #allSettled(Collection)}, recording the outcome of {@code mapper} applied to
+	 * each fulfilled element.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <I, O> Promise<SettledResults<O>> allSettled(Collection<Object> promisesOrValues, Mapper<I, PromiseOrValue<O>> mapper) {
+		if (promisesOrValues == null)
+			promisesOrValues = Collections.emptyList();
+		return new Settling((Mapper<Object, Object>) (Mapper<?, ?>) mapper, promisesOrValues.size()).start(promisesOrValues);
 	}
 
-    @SuppressWarnings("unchecked")
-	private static <R> Promise<R> reduceNext(Iterator<R> promisesOrValues, Reducer<R, PromiseOrValue<R>> reducer, R previousValue) {
-		if (!promisesOrValues.hasNext())
-			return resolve(previousValue);
-		return resolve(promisesOrValues.next()).
-				then(currentValue -> reducer.reduce(previousValue, (R) currentValue)).
-				then(nextValue -> reduceNext(promisesOrValues, reducer, nextValue));
+	/**
+	 * Returns a {@link Batcher} which dispatches the keys loaded within one scheduled task
+	 * to {@code loader} in a single call.
+	 */
+	public static <K, V> Batcher<K, V> batcher(Mapper<List<K>, Promise<Map<K, V>>> loader) {
+		return new Batcher<>(loader, Integer.MAX_VALUE, 0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns a {@link Batcher} which dispatches a batch to {@code loader} once it holds
+	 * {@code maxBatchSize} keys or {@code maxWait} after its first key was loaded.
+	 */
+	public static <K, V> Batcher<K, V> batcher(Mapper<List<K>, Promise<Map<K, V>>> loader, int maxBatchSize, long maxWait, TimeUnit unit) {
+		return new Batcher<>(loader, maxBatchSize, maxWait, unit);
+	}
+
+	public static <R> Promise<R> retry(Callable<Promise<R>> task, RetryPolicy policy) {
+		return retry(task, policy, ThreadProfile.CPU);
+	}
+
+	/**
+	 * Runs {@code task}, running it again on {@code profile} after a failure as {@code policy}
+	 * allows. Waits between attempts are scheduled on a timer, so no thread is blocked
+	 * meanwhile. Rejected with the last failure once the policy gives up, or with a
+	 * {@link java.util.concurrent.TimeoutException} if its deadline passes during an attempt;
+	 * cancelling the promise cancels the running attempt or the pending wait.
+	 */
+	public static <R> Promise<R> retry(Callable<Promise<R>> task, RetryPolicy policy, ThreadProfile profile) {
+		Deferred<R> deferred = deferred();
+		new Retry<>(task, policy, profile, deferred.resolver()).attempt();
+		long deadline = policy.deadlineNanos();
+		// expiring cancels the retry, and with it the attempt in flight
+		return deadline < 0 ? deferred.promise() : deferred.promise().timeout(deadline, TimeUnit.NANOSECONDS);
 	}
 
 	public static <R> Promise<List<R>> join(Object... promisesOrValues) {
@@ -170,14 +473,884 @@ public abstract class Promises {
 		return map(promisesOrValues, Mapper.noop());
 	}
 
+	/**
+	 * Drives {@link #retry}. {@code current} is the running attempt or the pending wait,
+	 * whichever cancelling the result should cancel. Attempts after the first always run on
+	 * the profile, never on the thread which saw the failure, so a task failing synchronously
+	 * does not recurse.
+	 */
+	private static final class Retry<R> {
+
+		private final Callable<Promise<R>> task;
+		private final RetryPolicy policy;
+		private final ThreadProfile profile;
+		private final Resolver<R> resolver;
+		private final long start = System.nanoTime();
+		private int attempts;
+		private volatile Promise<?> current;
+
+		Retry(Callable<Promise<R>> task, RetryPolicy policy, ThreadProfile profile, Resolver<R> resolver) {
+			this.task = task;
+			this.policy = policy;
+			this.profile = profile;
+			this.resolver = resolver;
+			resolver.onCancel(() -> {
+				Promise<?> current = this.current;
+				if (current != null)
+					current.cancel();
+			});
+		}
+
+		void attempt() {
+			if (resolver.isCancelled())
+				return;
+			attempts++;
+			Promise<R> attempt;
+			try {
+				attempt = task.call();
+			} catch (Throwable e) {
+				failed(e);
+				return;
+			}
+			if (attempt == null) {
+				failed(new NullPointerException("retried task returned null"));
+				return;
+			}
+			current = attempt;
+			if (resolver.isCancelled())
+				attempt.cancel();
+			attempt.done(resolver::resolve, this::failed);
+		}
+
+		private void failed(Throwable failure) {
+			if (resolver.isCancelled())
+				return;
+			long delay;
+			try {
+				delay = policy.delayNanos(attempts, System.nanoTime() - start, failure);
+			} catch (Throwable e) {
+				e.addSuppressed(failure);
+				resolver.reject(e);
+				return;
+			}
+			if (delay < 0)
+				resolver.reject(failure);
+			else if (delay == 0)
+				execute(this::attempt, profile);
+			else {
+				Promise<Object> wait = delay(null, delay, TimeUnit.NANOSECONDS);
+				current = wait;
+				if (resolver.isCancelled())
+					wait.cancel();
+				wait.done(ignored -> execute(this::attempt, profile), null);
+			}
+		}
+	}
+
+	/**
+	 * Drives {@link #allSettled}: every input, and the promise its mapper returns, is
+	 * observed through a stage of its own and its outcome written into the parallel arrays
+	 * of the result. Cancelling the result cancels those stages, which cancels an input only
+	 * when nothing else is listening to it.
+	 */
+	private static final class Settling {
+
+		private final Mapper<Object, Object> mapper;
+		private final Object[] values;
+		private final Throwable[] reasons;
+		private final boolean[] rejected;
+		private final Promise<?>[] inputs;
+		private final Promise<?>[] mapped;
+		private final AtomicInteger remaining;
+
+		private final Deferred<SettledResults<?>> deferred = deferred();
+		private final Resolver<SettledResults<?>> resolver = deferred.resolver();
+
+		Settling(Mapper<Object, Object> mapper, int size) {
+			this.mapper = mapper;
+			this.values = new Object[size];
+			this.reasons = new Throwable[size];
+			this.rejected = new boolean[size];
+			this.inputs = new Promise<?>[size];
+			this.mapped = new Promise<?>[size];
+			this.remaining = new AtomicInteger(size);
+			resolver.onCancel(() -> {
+				cancelAll(inputs);
+				cancelAll(mapped);
+			});
+		}
+
+		@SuppressWarnings("unchecked")
+		<R> Promise<SettledResults<R>> start(Collection<Object> promisesOrValues) {
+			if (values.length == 0)
+				resolver.resolve(new SettledResults<>(values, reasons, rejected));
+			int i = 0;
+			for (Object promiseOrValue : promisesOrValues) {
+				if (resolver.isCancelled())
+					break;
+				int index = i++;
+				if (promiseOrValue instanceof Promise)
+					inputs[index] = ((Promise<Object>) promiseOrValue).then(value -> {
+						map(index, value);
+						return null;
+					}, reason -> {
+						rejected(index, reason);
+						return null;
+					});
+				else
+					map(index, promiseOrValue instanceof Value ?
+							((Value<Object>) promiseOrValue).get() : promiseOrValue);
+			}
+			return (Promise<SettledResults<R>>) (Promise<?>) deferred.promise();
+		}
+
+		@SuppressWarnings("unchecked")
+		private void map(int index, Object input) {
+			Object result;
+			try {
+				result = mapper.map(input);
+			} catch (Throwable e) {
+				rejected(index, e);
+				return;
+			}
+			if (result instanceof Promise)
+				mapped[index] = ((Promise<Object>) result).then(value -> {
+					fulfilled(index, value);
+					return null;
+				}, reason -> {
+					rejected(index, reason);
+					return null;
+				});
+			else
+				fulfilled(index, result instanceof Value ? ((Value<Object>) result).get() : result);
+		}
+
+		private void fulfilled(int index, Object value) {
+			values[index] = value;
+			settled(index);
+		}
+
+		private void rejected(int index, Throwable reason) {
+			reasons[index] = reason;
+			rejected[index] = true;
+			settled(index);
+		}
+
+		private void settled(int index) {
+			inputs[index] = null;
+			mapped[index] = null;
+			if (remaining.decrementAndGet() == 0)
+				resolver.resolve(new SettledResults<>(values, reasons, rejected));
+		}
+	}
+
+	/**
+	 * Drives {@link #race}, {@link #any} and {@link #some}: settles as soon as the outcome is
+	 * decided and cancels its stage on every input still running, which cancels the input
+	 * only when nothing else is listening to it. Results and reasons are stored in slots
+	 * claimed by counter; a second counter, bumped after each store, tells which callback
+	 * saw the deciding store, so no lock is needed.
+	 */
+	private static final class Contest {
+
+		static final int RACE = 0;
+		static final int ANY = 1;
+		static final int SOME = 2;
+
+		private final int mode;
+		private final int needed;
+		private final Object[] promisesOrValues;
+		private final Promise<?>[] awaited;
+		private final Object[] results;
+		private final Throwable[] reasons;
+		private final AtomicInteger claimedResults = new AtomicInteger();
+		private final AtomicInteger storedResults = new AtomicInteger();
+		private final AtomicInteger claimedReasons = new AtomicInteger();
+		private final AtomicInteger storedReasons = new AtomicInteger();
+
+		private final Deferred<Object> deferred = deferred();
+		private final Resolver<Object> resolver = deferred.resolver();
+
+		Contest(Collection<Object> promisesOrValues, int needed, int mode) {
+			this.mode = mode;
+			this.needed = needed;
+			this.promisesOrValues = promisesOrValues == null ? new Object[0] : promisesOrValues.toArray();
+			this.awaited = new Promise<?>[this.promisesOrValues.length];
+			this.results = new Object[needed];
+			this.reasons = new Throwable[Math.max(0, this.promisesOrValues.length - needed + 1)];
+			resolver.onCancel(this::cancelRest);
+		}
+
+		@SuppressWarnings("unchecked")
+		Promise<?> start() {
+			if (promisesOrValues.length < needed) {
+				resolver.reject(new IllegalArgumentException(
+						"expected at least " + needed + " inputs, got " + promisesOrValues.length));
+				return deferred.promise();
+			}
+
+			Mapper<Object, PromiseOrValue<Object>> onValue = value -> {
+				fulfilled(value);
+				return null;
+			};
+			Mapper<Throwable, PromiseOrValue<Object>> onError = reason -> {
+				rejected(reason);
+				return null;
+			};
+			Future<Object> outcome = deferred.promise().future();
+			for (int i = 0; i < promisesOrValues.length && !outcome.isDone(); i++) {
+				Object promiseOrValue = promisesOrValues[i];
+				promisesOrValues[i] = null;
+				if (promiseOrValue instanceof Promise)
+					awaited[i] = ((Promise<Object>) promiseOrValue).then(onValue, onError);
+				else
+					fulfilled(promiseOrValue instanceof Value ?
+							((Value<Object>) promiseOrValue).get() : promiseOrValue);
+			}
+			// decided (or cancelled) while subscribing: release what was subscribed before that
+			if (outcome.isDone())
+				cancelRest();
+			return deferred.promise();
+		}
+
+		private void fulfilled(Object value) {
+			int slot = claimedResults.getAndIncrement();
+			if (slot >= needed)
+				return;
+			results[slot] = value;
+			if (storedResults.incrementAndGet() != needed)
+				return;
+			resolver.resolve(mode == SOME ? Arrays.asList(results) : results[0]);
+			cancelRest();
+		}
+
+		private void rejected(Throwable reason) {
+			if (mode == RACE) {
+				resolver.reject(reason);
+				cancelRest();
+				return;
+			}
+			int slot = claimedReasons.getAndIncrement();
+			if (slot >= reasons.length)
+				return;
+			reasons[slot] = reason;
+			if (storedReasons.incrementAndGet() != reasons.length)
+				return;
+			resolver.reject(new AggregateException(
+					reasons.length + " of " + awaited.length + " promises were rejected", Arrays.asList(reasons)));
+			cancelRest();
+		}
+
+		private void cancelRest() {
+			for (int i = 0; i < awaited.length; i++) {
+				Promise<?> promise = awaited[i];
+				if (promise != null) {
+					awaited[i] = null;
+					promise.cancel();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sequential reduce driver. It loops over the elements for as long as they (and
+	 * the reducer results) are already available, and only suspends on a pending promise,
+	 * resuming the loop from its callback. The stack depth is constant and at most one
+	 * promise is awaited at a time, regardless of the number of elements.
+	 */
+	private static class Reduction<R> {
+
+		@SuppressWarnings("rawtypes")
+		private static final AtomicIntegerFieldUpdater<Reduction> STATE =
+				AtomicIntegerFieldUpdater.newUpdater(Reduction.class, "state");
+
+		private static final int AWAITING = 0;
+		private static final int RECEIVED = 1;
+		private static final int SUSPENDED = 2;
+
+		private final Iterator<Object> promisesOrValues;
+		private final Reducer<R, PromiseOrValue<R>> reducer;
+		private final Resolver<R> resolver;
+
+		private final Receiver<Object> onValue = this::received;
+		private final Receiver<Throwable> onError = this::failed;
+
+		private R accumulator;
+		private volatile Promise<?> awaiting;
+		private boolean reducing;
+		private Object received;
+		private boolean rejected;
+		private volatile int state;
+
+		Reduction(Iterator<Object> promisesOrValues, Reducer<R, PromiseOrValue<R>> reducer,
+				  R initialValue, Resolver<R> resolver) {
+			this.promisesOrValues = promisesOrValues;
+			this.reducer = reducer;
+			this.accumulator = initialValue;
+			this.resolver = resolver;
+			resolver.onCancel(() -> {
+				Promise<?> promise = awaiting;
+				if (promise != null)
+					promise.cancel();
+			});
+		}
+
+		@SuppressWarnings("unchecked")
+		void drive() {
+			try {
+				for (;;) {
+					Object next;
+					if (reducing) {
+						reducing = false;
+						next = reducer.reduce(accumulator, (R) received);
+						if (!(next instanceof Promise)) {
+							accumulator = (R) unwrap(next);
+							continue;
+						}
+					} else {
+						if (!promisesOrValues.hasNext()) {
+							resolver.resolve(accumulator);
+							return;
+						}
+						next = promisesOrValues.next();
+						reducing = true;
+						if (!(next instanceof Promise)) {
+							received = unwrap(next);
+							continue;
+						}
+					}
+
+					if (resolver.isCancelled())
+						return;
+					STATE.lazySet(this, AWAITING);
+					// a stage of its own, so cancelling the reduction only releases the element
+					Promise<Object> stage = ((Promise<Object>) next).then(Promises::value);
+					awaiting = stage;
+					stage.done(onValue, onError);
+					if (STATE.compareAndSet(this, AWAITING, SUSPENDED))
+						return;
+					if (rejected)
+						return;
+					if (!reducing)
+						accumulator = (R) received;
+				}
+			} catch (Throwable e) {
+				resolver.reject(e);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private void received(Object value) {
+			received = value;
+			if (!STATE.compareAndSet(this, AWAITING, RECEIVED)) {
+				if (!reducing)
+					accumulator = (R) received;
+				drive();
+			}
+		}
+
+		private void failed(Throwable exception) {
+			rejected = true;
+			resolver.reject(exception);
+			STATE.compareAndSet(this, AWAITING, RECEIVED);
+		}
+
+		@SuppressWarnings("unchecked")
+		private static Object unwrap(Object promiseOrValue) {
+			return promiseOrValue instanceof Value ?
+					((Value<Object>) promiseOrValue).get() : promiseOrValue;
+		}
+	}
+
+	/**
+	 * Primitive {@link Reduction}: reducers are synchronous, so only elements can suspend it.
+	 */
+	private static abstract class NumericReduction {
+
+		@SuppressWarnings("rawtypes")
+		private static final AtomicIntegerFieldUpdater<NumericReduction> STATE =
+				AtomicIntegerFieldUpdater.newUpdater(NumericReduction.class, "state");
+
+		private static final int AWAITING = 0;
+		private static final int RECEIVED = 1;
+		private static final int SUSPENDED = 2;
+
+		private final Iterator<Object> promisesOrValues;
+
+		final Receiver<Throwable> onError = this::failed;
+
+		private volatile Promise<?> awaiting;
+		private boolean rejected;
+		private volatile int state;
+
+		NumericReduction(Iterator<Object> promisesOrValues) {
+			this.promisesOrValues = promisesOrValues;
+		}
+
+		void drive() {
+			try {
+				for (;;) {
+					if (!promisesOrValues.hasNext()) {
+						complete();
+						return;
+					}
+					Object next = promisesOrValues.next();
+					if (next instanceof Value)
+						next = ((Value<?>) next).get();
+					if (!(next instanceof Promise)) {
+						fold((Number) next);
+						continue;
+					}
+
+					if (isCancelled())
+						return;
+					STATE.lazySet(this, AWAITING);
+					Promise<?> stage = derive((Promise<?>) next);
+					awaiting = stage;
+					await(stage);
+					if (STATE.compareAndSet(this, AWAITING, SUSPENDED))
+						return;
+					if (rejected)
+						return;
+				}
+			} catch (Throwable e) {
+				reject(e);
+			}
+		}
+
+		/**
+		 * Called once an awaited element is folded, resuming the reduction.
+		 */
+		final void resume() {
+			if (!STATE.compareAndSet(this, AWAITING, RECEIVED))
+				drive();
+		}
+
+		final void failed(Throwable exception) {
+			rejected = true;
+			reject(exception);
+			STATE.compareAndSet(this, AWAITING, RECEIVED);
+		}
+
+		final void cancelAwaited() {
+			Promise<?> promise = awaiting;
+			if (promise != null)
+				promise.cancel();
+		}
+
+		abstract void fold(Number value) throws Throwable;
+		/**
+		 * Returns a stage of {@code promise} to await, so that cancelling the reduction
+		 * releases the element rather than cancelling it for its other listeners.
+		 */
+		abstract Promise<?> derive(Promise<?> promise);
+		abstract void await(Promise<?> promise);
+		abstract void complete();
+		abstract void reject(Throwable exception);
+		abstract boolean isCancelled();
+	}
+
+	private static final class LongReduction extends NumericReduction {
+
+		private final LongReducer reducer;
+		private final LongDeferred deferred;
+
+		private final LongReceiver onLong = this::received;
+		private final Receiver<Object> onValue = value -> received(((Number) value).longValue());
+
+		private long accumulator;
+
+		LongReduction(Iterator<Object> promisesOrValues, LongReducer reducer, long initialValue, LongDeferred deferred) {
+			super(promisesOrValues);
+			this.reducer = reducer;
+			this.accumulator = initialValue;
+			this.deferred = deferred;
+			deferred.onCancel(this::cancelAwaited);
+		}
+
+		private void received(long value) {
+			try {
+				accumulator = reducer.reduce(accumulator, value);
+			} catch (Throwable e) {
+				failed(e);
+				return;
+			}
+			resume();
+		}
+
+		@Override
+		void fold(Number value) throws Throwable {
+			accumulator = reducer.reduce(accumulator, value.longValue());
+		}
+
+		@Override @SuppressWarnings("unchecked")
+		Promise<?> derive(Promise<?> promise) {
+			if (promise instanceof LongPromise)
+				return ((LongPromise) promise).mapLong(value -> value);
+			return ((Promise<Object>) promise).then(Promises::value);
+		}
+
+		@Override @SuppressWarnings("unchecked")
+		void await(Promise<?> promise) {
+			if (promise instanceof LongPromise)
+				((LongPromise) promise).doneLong(onLong, onError);
+			else
+				((Promise<Object>) promise).done(onValue, onError);
+		}
+
+		@Override
+		void complete() {
+			deferred.resolve(accumulator);
+		}
+
+		@Override
+		void reject(Throwable exception) {
+			deferred.reject(exception);
+		}
+
+		@Override
+		boolean isCancelled() {
+			return deferred.isCancelled();
+		}
+	}
+
+	private static final class DoubleReduction extends NumericReduction {
+
+		private final DoubleReducer reducer;
+		private final DoubleDeferred deferred;
+
+		private final DoubleReceiver onDouble = this::received;
+		private final Receiver<Object> onValue = value -> received(((Number) value).doubleValue());
+
+		private double accumulator;
+
+		DoubleReduction(Iterator<Object> promisesOrValues, DoubleReducer reducer, double initialValue, DoubleDeferred deferred) {
+			super(promisesOrValues);
+			this.reducer = reducer;
+			this.accumulator = initialValue;
+			this.deferred = deferred;
+			deferred.onCancel(this::cancelAwaited);
+		}
+
+		private void received(double value) {
+			try {
+				accumulator = reducer.reduce(accumulator, value);
+			} catch (Throwable e) {
+				failed(e);
+				return;
+			}
+			resume();
+		}
+
+		@Override
+		void fold(Number value) throws Throwable {
+			accumulator = reducer.reduce(accumulator, value.doubleValue());
+		}
+
+		@Override @SuppressWarnings("unchecked")
+		Promise<?> derive(Promise<?> promise) {
+			if (promise instanceof DoublePromise)
+				return ((DoublePromise) promise).mapDouble(value -> value);
+			return ((Promise<Object>) promise).then(Promises::value);
+		}
+
+		@Override @SuppressWarnings("unchecked")
+		void await(Promise<?> promise) {
+			if (promise instanceof DoublePromise)
+				((DoublePromise) promise).doneDouble(onDouble, onError);
+			else
+				((Promise<Object>) promise).done(onValue, onError);
+		}
+
+		@Override
+		void complete() {
+			deferred.resolve(accumulator);
+		}
+
+		@Override
+		void reject(Throwable exception) {
+			deferred.reject(exception);
+		}
+
+		@Override
+		boolean isCancelled() {
+			return deferred.isCancelled();
+		}
+	}
+
+	/**
+	 * Bounded-concurrency map driver. Each completion frees a slot and {@link #drain()}
+	 * launches the next element; the drain loop is serialized, so elements which settle
+	 * synchronously do not grow the stack.
+	 */
+	private static class Mapping<I, O> {
+
+		@SuppressWarnings("rawtypes")
+		private static final AtomicIntegerFieldUpdater<Mapping> WIP =
+				AtomicIntegerFieldUpdater.newUpdater(Mapping.class, "wip");
+
+		private final Object[] promisesOrValues;
+		private final Mapper<I, PromiseOrValue<O>> mapper;
+		private final boolean ordered;
+		private final Resolver<List<O>> resolver;
+
+		private final Object[] results;
+		private final Promise<?>[] launched;
+		private final AtomicInteger slots;
+		private final AtomicInteger position = new AtomicInteger();
+		private final AtomicInteger remaining;
+
+		private int next;
+		private volatile boolean failed;
+		private volatile int wip;
+
+		Mapping(Object[] promisesOrValues, Mapper<I, PromiseOrValue<O>> mapper, int concurrency,
+				boolean ordered, Resolver<List<O>> resolver) {
+			this.promisesOrValues = promisesOrValues;
+			this.mapper = mapper;
+			this.ordered = ordered;
+			this.resolver = resolver;
+			this.results = new Object[promisesOrValues.length];
+			this.launched = new Promise<?>[promisesOrValues.length];
+			this.slots = new AtomicInteger(concurrency);
+			this.remaining = new AtomicInteger(promisesOrValues.length);
+			resolver.onCancel(() -> {
+				failed = true;
+				cancelAll(launched);
+			});
+		}
+
+		void drain() {
+			if (WIP.getAndIncrement(this) != 0)
+				return;
+			int missed = 1;
+			for (;;) {
+				while (!failed && next < promisesOrValues.length && slots.get() > 0) {
+					slots.decrementAndGet();
+					launch(next++);
+				}
+				missed = WIP.addAndGet(this, -missed);
+				if (missed == 0)
+					return;
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private void launch(int idx) {
+			Promise<I> promise;
+			try {
+				promise = (Promise<I>) resolve(promisesOrValues[idx]);
+			} catch (Throwable e) {
+				failed(e);
+				return;
+			}
+			Promise<O> mapped = promise.then(mapper);
+			launched[idx] = mapped;
+			mapped.done(success -> completed(idx, success), this::failed);
+		}
+
+		@SuppressWarnings("unchecked")
+		private void completed(int idx, Object result) {
+			launched[idx] = null;
+			results[ordered ? idx : position.getAndIncrement()] = result;
+			if (remaining.decrementAndGet() == 0) {
+				resolver.resolve((List<O>) Arrays.asList(results));
+				return;
+			}
+			slots.incrementAndGet();
+			drain();
+		}
+
+		private void failed(Throwable exception) {
+			failed = true;
+			resolver.reject(exception);
+		}
+	}
+
+	/**
+	 * Completion-order results queue behind {@link #stream(Collection, Mapper)}. Producers
+	 * enqueue outcomes as they settle; a consumer waiting on {@link #hasNext()} parks a
+	 * single deferred, which is settled by whoever takes it first.
+	 */
+	private static class Stream<R> implements AsyncIterator<R> {
+
+		@SuppressWarnings("rawtypes")
+		private static final AtomicReferenceFieldUpdater<Stream, Deferred> WAITING =
+				AtomicReferenceFieldUpdater.newUpdater(Stream.class, Deferred.class, "waiting");
+
+		private static final Object NULL = new Object();
+
+		private final Queue<Object> ready = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger remaining;
+
+		private volatile Deferred<Boolean> waiting;
+
+		Stream(int size) {
+			remaining = new AtomicInteger(size);
+		}
+
+		@Override
+		public Promise<Boolean> hasNext() {
+			Promise<Boolean> outcome = poll();
+			if (outcome != null)
+				return outcome;
+
+			Deferred<Boolean> deferred = deferred();
+			waiting = deferred;
+
+			// results may have arrived before the deferred was published
+			if (isReady() && WAITING.compareAndSet(this, deferred, null))
+				return poll();
+			return deferred.promise();
+		}
+
+		@Override @SuppressWarnings("unchecked")
+		public R next() {
+			Object result = ready.poll();
+			if (result == null)
+				throw new NoSuchElementException();
+			if (result instanceof Failure) {
+				Throwable reason = ((Failure) result).reason;
+				if (reason instanceof RuntimeException)
+					throw (RuntimeException) reason;
+				if (reason instanceof Error)
+					throw (Error) reason;
+				throw new CompletionException(reason);
+			}
+			return result == NULL ? null : (R) result;
+		}
+
+		void received(Object result) {
+			enqueue(result == null ? NULL : result);
+		}
+
+		void failed(Throwable exception) {
+			enqueue(new Failure(exception));
+		}
+
+		@SuppressWarnings("unchecked")
+		private void enqueue(Object outcome) {
+			ready.offer(outcome);
+			remaining.decrementAndGet();
+			Deferred<Boolean> deferred = WAITING.getAndSet(this, null);
+			if (deferred != null)
+				deferred.resolver().chain(poll());
+		}
+
+		private boolean isReady() {
+			return !ready.isEmpty() || remaining.get() == 0;
+		}
+
+		private Promise<Boolean> poll() {
+			Object head = ready.peek();
+			if (head instanceof Failure) {
+				ready.poll();
+				return reject(((Failure) head).reason);
+			}
+			if (head != null)
+				return resolve(Boolean.TRUE);
+			if (remaining.get() == 0)
+				return ready.isEmpty() ? resolve(Boolean.FALSE) : resolve(Boolean.TRUE);
+			return null;
+		}
+
+		private static class Failure {
+			private final Throwable reason;
+
+			Failure(Throwable reason) {
+				this.reason = reason;
+			}
+		}
+	}
+
+	private static void cancelAll(Promise<?>[] promises) {
+		for (Promise<?> promise : promises)
+			if (promise != null)
+				promise.cancel();
+	}
+
+	/**
+	 * Installs the manager used from then on, instead of the one found by the
+	 * {@link ServiceLoader}. Installing before first use also skips the classpath scan.
+	 */
+	public static void install(DeferredManager manager) {
+		if (manager == null)
+			throw new NullPointerException("manager");
+		INSTALLED = manager;
+	}
+
+	/**
+	 * Runs {@code body} with {@code manager} bound to the calling thread, e.g. to isolate a test
+	 * or a tenant with its own executors. The binding does not follow continuations onto
+	 * other threads.
+	 */
+	public static <R> R using(DeferredManager manager, Callable<R> body) throws Throwable {
+		DeferredManager previous = SCOPED.get();
+		SCOPED.set(manager);
+		SCOPES.incrementAndGet();
+		try {
+			return body.call();
+		} finally {
+			SCOPES.decrementAndGet();
+			if (previous == null)
+				SCOPED.remove();
+			else
+				SCOPED.set(previous);
+		}
+	}
+
+	/**
+	 * Installs a global handler for rejections nobody handles: a rejected promise which is
+	 * garbage collected without ever being observed, or a rejection (or an exception thrown
+	 * by the success receiver) reaching a {@code done()} without a failure receiver.
+	 * Cancellations are never reported. Pass {@code null} to remove the handler.
+	 */
+	public static void onUnhandledRejection(Receiver<Throwable> handler) {
+		UNHANDLED_REJECTION_HANDLER = handler;
+	}
+
+	public static Receiver<Throwable> unhandledRejectionHandler() {
+		return UNHANDLED_REJECTION_HANDLER;
+	}
+
+	private static volatile Receiver<Throwable> UNHANDLED_REJECTION_HANDLER;
+
 	private static DeferredManager manager() {
-		if (MANAGER == null)
-			MANAGER = ServiceLoader.load(DeferredManager.class,
-                        DeferredManager.class.getClassLoader()).
-                    iterator().next();
-		return MANAGER;
+		// thread bindings are only looked up while some thread has one
+		if (SCOPES.get() > 0) {
+			DeferredManager scoped = SCOPED.get();
+			if (scoped != null)
+				return scoped;
+		}
+		DeferredManager installed = INSTALLED;
+		return installed != null ? installed : Loaded.MANAGER;
 	}
 
-	private static DeferredManager MANAGER;
+	private static volatile DeferredManager INSTALLED;
+
+	private static final ThreadLocal<DeferredManager> SCOPED = new ThreadLocal<>();
+	private static final AtomicInteger SCOPES = new AtomicInteger();
+
+	/**
+	 * Holds the {@link ServiceLoader} provided manager, loaded once on first use. When several
+	 * providers are present, the {@code com.github.tsouza.promises.manager} system property
+	 * names the one to use.
+	 */
+	private static final class Loaded {
+
+		static final DeferredManager MANAGER = load();
+
+		private static DeferredManager load() {
+			String selected = System.getProperty("com.github.tsouza.promises.manager");
+			for (DeferredManager manager : ServiceLoader.load(DeferredManager.class,
+					DeferredManager.class.getClassLoader())) {
+				if (selected == null || selected.equals(manager.getClass().getName()))
+					return manager;
+			}
+			throw new IllegalStateException(selected == null ?
+					"no " + DeferredManager.class.getName() + " provider found" :
+					"provider " + selected + " not found");
+		}
+	}
 
 }
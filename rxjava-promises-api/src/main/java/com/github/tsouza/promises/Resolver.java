@@ -27,4 +27,14 @@ public interface Resolver<R> {
 	public void resolve(R result);
 	public void reject(Throwable exception);
 	public void chain(Promise<R> promise);
+
+	public default boolean isCancelled() {
+		return false;
+	}
+
+	/**
+	 * Registers a callback to be run if the promise being resolved gets cancelled.
+	 */
+	public default void onCancel(Runnable callback) {
+	}
 }
\ No newline at end of file
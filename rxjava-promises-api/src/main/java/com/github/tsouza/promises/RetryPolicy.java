@@ -0,0 +1,212 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 - Thiago Souza <tcostasouza@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tsouza.promises;
+
+import com.github.tsouza.promises.functions.Mapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When and how long after a failure {@link Promises#retry} tries again. Waits grow
+ * exponentially from the initial delay up to the maximum delay, each shortened by a random
+ * fraction of up to {@code jitter} of it, so that clients failing together do not retry
+ * together. Cancellations are never retried.
+ * <pre>
+ * RetryPolicy policy = RetryPolicy.builder()
+ *         .maxAttempts(5)
+ *         .backoff(100, 10_000, TimeUnit.MILLISECONDS)
+ *         .jitter(0.5)
+ *         .retryOn(IOException.class)
+ *         .deadline(30, TimeUnit.SECONDS)
+ *         .build();
+ * </pre>
+ */
+public final class RetryPolicy {
+
+	private final int maxAttempts;
+	private final long initialDelayNanos;
+	private final long maxDelayNanos;
+	private final double multiplier;
+	private final double jitter;
+	private final long deadlineNanos;
+	private final List<Condition<?>> conditions;
+
+	private RetryPolicy(Builder builder) {
+		this.maxAttempts = builder.maxAttempts;
+		this.initialDelayNanos = builder.initialDelayNanos;
+		this.maxDelayNanos = builder.maxDelayNanos;
+		this.multiplier = builder.multiplier;
+		this.jitter = builder.jitter;
+		this.deadlineNanos = builder.deadlineNanos;
+		this.conditions = new ArrayList<>(builder.conditions);
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Returns how many nanoseconds to wait before attempt {@code attempt + 1}, or {@code -1}
+	 * not to retry {@code failure}.
+	 *
+	 * @param attempt the number of attempts made so far, starting at 1
+	 * @param elapsedNanos the time passed since the first attempt started
+	 */
+	long delayNanos(int attempt, long elapsedNanos, Throwable failure) throws Throwable {
+		if (attempt >= maxAttempts || failure instanceof CancellationException || !retries(failure))
+			return -1;
+
+		double backoff = initialDelayNanos * Math.pow(multiplier, attempt - 1);
+		long delay = (long) Math.min(backoff, maxDelayNanos);
+		if (jitter > 0)
+			delay -= (long) (delay * jitter * ThreadLocalRandom.current().nextDouble());
+		if (deadlineNanos >= 0 && elapsedNanos + delay >= deadlineNanos)
+			return -1;
+		return delay;
+	}
+
+	/**
+	 * Returns the deadline measured from the first attempt, or {@code -1} if there is none.
+	 */
+	long deadlineNanos() {
+		return deadlineNanos;
+	}
+
+	private boolean retries(Throwable failure) throws Throwable {
+		if (conditions.isEmpty())
+			return true;
+		for (Condition<?> condition : conditions)
+			if (condition.test(failure))
+				return true;
+		return false;
+	}
+
+	private static final class Condition<T extends Throwable> {
+		private final Class<T> exceptionType;
+		private final Mapper<T, Boolean> predicate;
+
+		Condition(Class<T> exceptionType, Mapper<T, Boolean> predicate) {
+			this.exceptionType = exceptionType;
+			this.predicate = predicate;
+		}
+
+		boolean test(Throwable failure) throws Throwable {
+			return exceptionType.isInstance(failure) &&
+					Boolean.TRUE.equals(predicate.map(exceptionType.cast(failure)));
+		}
+	}
+
+	public static final class Builder {
+
+		private int maxAttempts = 3;
+		private long initialDelayNanos = TimeUnit.MILLISECONDS.toNanos(100);
+		private long maxDelayNanos = TimeUnit.SECONDS.toNanos(30);
+		private double multiplier = 2;
+		private double jitter;
+		private long deadlineNanos = -1;
+		private final List<Condition<?>> conditions = new ArrayList<>();
+
+		private Builder() {
+		}
+
+		/**
+		 * Sets how many times the task is run at most, the first run included. Defaults to 3.
+		 */
+		public Builder maxAttempts(int maxAttempts) {
+			if (maxAttempts <= 0)
+				throw new IllegalArgumentException("maxAttempts must be positive: " + maxAttempts);
+			this.maxAttempts = maxAttempts;
+			return this;
+		}
+
+		/**
+		 * Sets the wait before the first retry and the cap on later ones. Defaults to
+		 * 100 milliseconds and 30 seconds.
+		 */
+		public Builder backoff(long initialDelay, long maxDelay, TimeUnit unit) {
+			if (initialDelay < 0 || maxDelay < initialDelay)
+				throw new IllegalArgumentException("invalid backoff: " + initialDelay + ", " + maxDelay);
+			this.initialDelayNanos = unit.toNanos(initialDelay);
+			this.maxDelayNanos = unit.toNanos(maxDelay);
+			return this;
+		}
+
+		/**
+		 * Sets the factor each wait grows by. Defaults to 2.
+		 */
+		public Builder multiplier(double multiplier) {
+			if (multiplier < 1)
+				throw new IllegalArgumentException("multiplier must be at least 1: " + multiplier);
+			this.multiplier = multiplier;
+			return this;
+		}
+
+		/**
+		 * Sets the largest fraction, between 0 and 1, each wait may be randomly shortened by.
+		 * Defaults to 0.
+		 */
+		public Builder jitter(double jitter) {
+			if (jitter < 0 || jitter > 1)
+				throw new IllegalArgumentException("jitter must be between 0 and 1: " + jitter);
+			this.jitter = jitter;
+			return this;
+		}
+
+		/**
+		 * Gives up once retrying would go past {@code deadline} after the first attempt started.
+		 * An attempt still running at the deadline is cancelled, and the retry rejected with a
+		 * {@link java.util.concurrent.TimeoutException}.
+		 */
+		public Builder deadline(long deadline, TimeUnit unit) {
+			if (deadline < 0)
+				throw new IllegalArgumentException("deadline must not be negative: " + deadline);
+			this.deadlineNanos = unit.toNanos(deadline);
+			return this;
+		}
+
+		/**
+		 * Retries failures of {@code exceptionType}. Without any {@code retryOn}, every failure
+		 * is retried.
+		 */
+		public <T extends Throwable> Builder retryOn(Class<T> exceptionType) {
+			return retryOn(exceptionType, failure -> true);
+		}
+
+		/**
+		 * Retries failures of {@code exceptionType} for which {@code predicate} returns {@code true}.
+		 */
+		public <T extends Throwable> Builder retryOn(Class<T> exceptionType, Mapper<T, Boolean> predicate) {
+			conditions.add(new Condition<>(exceptionType, predicate));
+			return this;
+		}
+
+		public RetryPolicy build() {
+			return new RetryPolicy(this);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 - Thiago Souza <tcostasouza@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tsouza.promises;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcomes of {@link Promises#allSettled}, in input order. Fulfillment values and rejection
+ * reasons are kept in parallel arrays next to a rejection flag, so an element rejected with
+ * a {@code null} reason still reads as rejected.
+ */
+public final class SettledResults<R> {
+
+	private final Object[] values;
+	private final Throwable[] reasons;
+	private final boolean[] rejected;
+
+	SettledResults(Object[] values, Throwable[] reasons, boolean[] rejected) {
+		this.values = values;
+		this.reasons = reasons;
+		this.rejected = rejected;
+	}
+
+	public int size() {
+		return values.length;
+	}
+
+	public boolean isFulfilled(int index) {
+		return !rejected[index];
+	}
+
+	public boolean isRejected(int index) {
+		return rejected[index];
+	}
+
+	/**
+	 * Returns the fulfillment value of the element at {@code index}, or {@code null} if it was rejected.
+	 */
+	@SuppressWarnings("unchecked")
+	public R value(int index) {
+		return (R) values[index];
+	}
+
+	/**
+	 * Returns the rejection reason of the element at {@code index}, or {@code null} if it was fulfilled.
+	 */
+	public Throwable reason(int index) {
+		return reasons[index];
+	}
+
+	/**
+	 * Returns the fulfillment values, in input order, skipping rejected elements.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<R> fulfilled() {
+		List<R> fulfilled = new ArrayList<>(values.length);
+		for (int i = 0; i < values.length; i++)
+			if (!rejected[i])
+				fulfilled.add((R) values[i]);
+		return fulfilled;
+	}
+
+	/**
+	 * Returns the rejection reasons, in input order, skipping fulfilled elements.
+	 */
+	public List<Throwable> rejected() {
+		List<Throwable> reasons = new ArrayList<>();
+		for (int i = 0; i < rejected.length; i++)
+			if (rejected[i])
+				reasons.add(this.reasons[i]);
+		return reasons;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0)
+				builder.append(", ");
+			if (!rejected[i])
+				builder.append(values[i]);
+			else
+				builder.append("rejected: ").append(reasons[i]);
+		}
+		return builder.append(']').toString();
+	}
+}
@@ -23,6 +23,49 @@
  */
 package com.github.tsouza.promises;
 
-public enum ThreadProfile {
-	CPU, IO, IMMEDIATE, TRAMPOLINE
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Where a task runs. Besides the built-in profiles, any number of named profiles can be
+ * created with {@link #named(String)} and mapped to an executor through the
+ * {@link com.github.tsouza.promises.spi.DeferredManager}.
+ * <p>
+ * Profiles are interned by name, so they can be compared by identity.
+ */
+public final class ThreadProfile {
+
+	private static final ConcurrentMap<String, ThreadProfile> PROFILES = new ConcurrentHashMap<>();
+
+	public static final ThreadProfile CPU = named("CPU");
+	public static final ThreadProfile IO = named("IO");
+	public static final ThreadProfile IMMEDIATE = named("IMMEDIATE");
+	public static final ThreadProfile TRAMPOLINE = named("TRAMPOLINE");
+
+	/**
+	 * Runs each task on its own virtual thread on JDK 21+, falling back to {@link #IO}
+	 * on older runtimes. Blocking, including {@link Promise#await()}, is cheap there.
+	 */
+	public static final ThreadProfile VIRTUAL = named("VIRTUAL");
+
+	private final String name;
+
+	private ThreadProfile(String name) {
+		this.name = name;
+	}
+
+	public static ThreadProfile named(String name) {
+		if (name == null)
+			throw new NullPointerException("name");
+		return PROFILES.computeIfAbsent(name, ThreadProfile::new);
+	}
+
+	public String name() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
 }
@@ -21,10 +21,9 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
  * THE SOFTWARE.
  */
-package com.github.tsouza.promises.internal.functions;
+package com.github.tsouza.promises.functions;
 
-import com.github.tsouza.promises.internal.RxObserverAdapter;
-import rx.functions.Func0;
-
-public interface OnFinally<O> extends Func0<RxObserverAdapter<O>> {
+@FunctionalInterface
+public interface DoubleMapper {
+	public double map(double input) throws Throwable;
 }
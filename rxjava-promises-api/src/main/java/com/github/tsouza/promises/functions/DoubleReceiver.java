@@ -21,10 +21,9 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
  * THE SOFTWARE.
  */
-package com.github.tsouza.promises.internal.functions;
+package com.github.tsouza.promises.functions;
 
-import com.github.tsouza.promises.internal.RxObserverAdapter;
-import rx.functions.Func1;
-
-public interface OnFulfilled<I, O> extends Func1<I, RxObserverAdapter<O>> {
+@FunctionalInterface
+public interface DoubleReceiver {
+	public void receive(double input) throws Throwable;
 }
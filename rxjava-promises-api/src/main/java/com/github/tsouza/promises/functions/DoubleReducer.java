@@ -21,10 +21,9 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
  * THE SOFTWARE.
  */
-package com.github.tsouza.promises.internal.functions;
+package com.github.tsouza.promises.functions;
 
-import com.github.tsouza.promises.internal.RxObserverAdapter;
-import rx.functions.Func1;
-
-public interface OnRejected<O> extends Func1<Throwable, RxObserverAdapter<O>> {
+@FunctionalInterface
+public interface DoubleReducer {
+	public double reduce(double previousValue, double currentValue) throws Throwable;
 }
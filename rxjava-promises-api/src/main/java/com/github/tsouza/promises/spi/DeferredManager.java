@@ -24,14 +24,68 @@
 package com.github.tsouza.promises.spi;
 
 import com.github.tsouza.promises.Deferred;
+import com.github.tsouza.promises.DoubleDeferred;
+import com.github.tsouza.promises.DoublePromise;
+import com.github.tsouza.promises.LongDeferred;
+import com.github.tsouza.promises.LongPromise;
 import com.github.tsouza.promises.Promise;
 import com.github.tsouza.promises.Resolver;
 import com.github.tsouza.promises.ThreadProfile;
 import com.github.tsouza.promises.functions.Receiver;
 
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 public interface DeferredManager {
     public <R> Deferred<R> deferred();
     public <R> Promise<R> resolved(Object value);
     public <R> Promise<R> rejected(Throwable exception);
+
+    public LongDeferred deferredLong();
+    public DoubleDeferred deferredDouble();
+    public LongPromise resolvedLong(long value);
+    public DoublePromise resolvedDouble(double value);
+
+    /**
+     * Bridges a {@link Future} into a promise without blocking a thread on it.
+     *
+     * @param profile where the promise is settled, or {@code null} to settle it
+     *                on whichever thread completes the future
+     * @param unit    the unit of {@code timeout}, or {@code null} for no timeout
+     */
+    public <R> Promise<R> from(Future<R> future, ThreadProfile profile, long timeout, TimeUnit unit);
+
+    /**
+     * Links a {@link CompletionStage} to a promise by callback, settling it on whichever
+     * thread completes the stage. Cancelling the promise cancels the stage when it is a
+     * {@link Future}.
+     */
+    public <R> Promise<R> from(CompletionStage<R> stage);
+
+    /**
+     * Returns a promise which is resolved with {@code promiseOrValue} after {@code delay},
+     * without blocking any thread meanwhile.
+     */
+    public <R> Promise<R> delayed(Object promiseOrValue, long delay, TimeUnit unit);
+
+    /**
+     * Maps {@code profile} to {@code executor}, so tasks scheduled on that profile run there
+     * from then on. Built-in profiles can be remapped as well.
+     */
+    public void register(ThreadProfile profile, Executor executor);
+
     public <R> void schedule(ThreadProfile profile, Receiver<Resolver<R>> receiver, Resolver<R> resolver);
+
+    /**
+     * Runs {@code task} on {@code profile}, for work which has no promise of its own to settle.
+     * Implementations should override this to skip the throwaway deferred.
+     */
+    public default void execute(ThreadProfile profile, Runnable task) {
+        schedule(profile, resolver -> {
+            task.run();
+            resolver.resolve(null);
+        }, this.<Object>deferred().resolver());
+    }
 }
@@ -0,0 +1,106 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 - Thiago Souza <tcostasouza@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tsouza.promises.spi;
+
+import java.util.Iterator;
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Selects the {@link PromiseMetrics} in use: the one installed through {@link #install},
+ * otherwise the first {@link ServiceLoader} provider, otherwise {@link PromiseMetrics#NOOP};
+ * and the sampling rate of async stack traces.
+ * <p>
+ * Each choice is fixed the first time the implementation asks for it, so it can treat
+ * it as a constant and pay nothing for the disabled default.
+ */
+public final class Instrumentation {
+
+	/**
+	 * The system property setting the fraction of promises which record async stack traces,
+	 * unless {@link #traceSampling(double)} is called first.
+	 */
+	public static final String TRACE_SAMPLING_PROPERTY = "com.github.tsouza.promises.traces";
+
+	private static final AtomicReference<PromiseMetrics> METRICS = new AtomicReference<>();
+	private static final AtomicReference<Double> TRACE_SAMPLING = new AtomicReference<>();
+
+	private Instrumentation() {
+	}
+
+	/**
+	 * @throws IllegalStateException if metrics were already installed or are already in use
+	 */
+	public static void install(PromiseMetrics metrics) {
+		if (metrics == null)
+			throw new NullPointerException("metrics");
+		if (!METRICS.compareAndSet(null, metrics))
+			throw new IllegalStateException("metrics must be installed before the first promise is created");
+	}
+
+	/**
+	 * Returns the metrics in use, fixing the choice.
+	 */
+	public static PromiseMetrics metrics() {
+		PromiseMetrics metrics = METRICS.get();
+		if (metrics != null)
+			return metrics;
+
+		Iterator<PromiseMetrics> providers = ServiceLoader.load(PromiseMetrics.class,
+				PromiseMetrics.class.getClassLoader()).iterator();
+		METRICS.compareAndSet(null, providers.hasNext() ? providers.next() : PromiseMetrics.NOOP);
+		return METRICS.get();
+	}
+
+	/**
+	 * Sets the fraction, between 0 and 1, of deferred promises and {@code then()} stages
+	 * which record where they were created, to tag the rejections passing through them.
+	 *
+	 * @throws IllegalStateException if the rate was already set or is already in use
+	 */
+	public static void traceSampling(double rate) {
+		if (rate < 0 || rate > 1)
+			throw new IllegalArgumentException("rate must be between 0 and 1: " + rate);
+		if (!TRACE_SAMPLING.compareAndSet(null, rate))
+			throw new IllegalStateException("trace sampling must be set before the first promise is created");
+	}
+
+	/**
+	 * Returns the trace sampling rate in use, fixing the choice.
+	 */
+	public static double traceSampling() {
+		Double rate = TRACE_SAMPLING.get();
+		if (rate != null)
+			return rate;
+
+		double property;
+		try {
+			property = Math.max(0, Math.min(1, Double.parseDouble(System.getProperty(TRACE_SAMPLING_PROPERTY, "0"))));
+		} catch (NumberFormatException | SecurityException e) {
+			property = 0;
+		}
+		TRACE_SAMPLING.compareAndSet(null, property);
+		return TRACE_SAMPLING.get();
+	}
+}
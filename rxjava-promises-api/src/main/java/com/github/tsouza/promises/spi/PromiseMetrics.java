@@ -0,0 +1,67 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 - Thiago Souza <tcostasouza@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tsouza.promises.spi;
+
+import com.github.tsouza.promises.ThreadProfile;
+
+/**
+ * Receives instrumentation events from the promise implementation. Every method defaults
+ * to doing nothing, so implementations only override what they record.
+ * <p>
+ * Metrics are picked once, when the first promise is created: see {@link Instrumentation}.
+ * With the {@link #NOOP} default the implementation skips instrumentation altogether.
+ */
+public interface PromiseMetrics {
+
+	public static final PromiseMetrics NOOP = new PromiseMetrics() {
+	};
+
+	public default void created() {
+	}
+
+	/**
+	 * @param nanos time from creation to settlement, or {@code -1} when the promise is not
+	 *              timed (only deferred promises are)
+	 */
+	public default void settled(boolean rejected, long nanos) {
+	}
+
+	/**
+	 * A task was queued on {@code profile}.
+	 */
+	public default void scheduled(ThreadProfile profile) {
+	}
+
+	/**
+	 * A task queued on {@code profile} started running, {@code delayNanos} after being queued.
+	 */
+	public default void started(ThreadProfile profile, long delayNanos) {
+	}
+
+	/**
+	 * A task queued on {@code profile} was cancelled before it started.
+	 */
+	public default void dropped(ThreadProfile profile) {
+	}
+}
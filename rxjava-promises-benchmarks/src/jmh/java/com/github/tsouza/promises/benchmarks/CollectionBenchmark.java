@@ -0,0 +1,114 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 - Thiago Souza <tcostasouza@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tsouza.promises.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tsouza.promises.Promises.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CollectionBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int size;
+
+    private List<Object> values;
+    private List<Object> promises;
+    private List<Object> longPromises;
+
+    @Setup
+    public void setup() {
+        values = new ArrayList<>(size);
+        promises = new ArrayList<>(size);
+        longPromises = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(i);
+            promises.add(resolve(i));
+            longPromises.add(resolveLong(i));
+        }
+    }
+
+    @Benchmark
+    public List<Object> allOfValues() throws ExecutionException, InterruptedException {
+        return all(values).future().get();
+    }
+
+    @Benchmark
+    public List<Object> allOfPromises() throws ExecutionException, InterruptedException {
+        return all(promises).future().get();
+    }
+
+    @Benchmark
+    public List<Integer> mapOfValues() throws ExecutionException, InterruptedException {
+        return map(values, (Integer n) -> value(n + 1)).future().get();
+    }
+
+    @Benchmark
+    public List<Integer> mapOfPromises() throws ExecutionException, InterruptedException {
+        return map(promises, (Integer n) -> resolve(value(n + 1))).future().get();
+    }
+
+    @Benchmark
+    public List<Integer> mapOfPromisesBounded() throws ExecutionException, InterruptedException {
+        return map(promises, (Integer n) -> resolve(value(n + 1)), 16).future().get();
+    }
+
+    @Benchmark
+    public List<Integer> mapUnorderedOfPromisesBounded() throws ExecutionException, InterruptedException {
+        return mapUnordered(promises, (Integer n) -> resolve(value(n + 1)), 16).future().get();
+    }
+
+    @Benchmark
+    public Integer reduceValues() throws ExecutionException, InterruptedException {
+        return reduce(values, (Integer p, Integer c) -> value(p + c), 0).future().get();
+    }
+
+    @Benchmark
+    public Integer reducePromises() throws ExecutionException, InterruptedException {
+        return reduce(promises, (Integer p, Integer c) -> value(p + c), 0).future().get();
+    }
+
+    @Benchmark
+    public long sumLongValues() throws Exception {
+        return sumLong(values).awaitLong();
+    }
+
+    @Benchmark
+    public long sumLongPromises() throws Exception {
+        return sumLong(longPromises).awaitLong();
+    }
+
+    @Benchmark
+    public long[] mapToLongOfPromises() throws ExecutionException, InterruptedException {
+        return mapToLong(promises, (Integer n) -> n + 1).future().get();
+    }
+
+}
@@ -0,0 +1,59 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 - Thiago Souza <tcostasouza@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tsouza.promises.benchmarks;
+
+import com.github.tsouza.promises.Promise;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tsouza.promises.Promises.*;
+import static java.util.Arrays.asList;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpreadBenchmark {
+
+    private final Promise<Object> pair = resolve(asList(1, 2));
+    private final Promise<Object> quintuple = resolve(asList(1, 2, 3, 4, 5));
+
+    @Benchmark
+    public Promise<Integer> spread2() {
+        return pair.spread((Integer n1, Integer n2) -> value(n1 + n2));
+    }
+
+    @Benchmark
+    public Promise<Integer> spread5() {
+        return quintuple.spread((Integer n1, Integer n2, Integer n3, Integer n4, Integer n5) ->
+                value(n1 + n2 + n3 + n4 + n5));
+    }
+
+    @Benchmark
+    public Promise<Integer> joinThenSpread() {
+        return join(resolve(1), resolve(2)).
+                spread((Integer n1, Integer n2) -> value(n1 + n2));
+    }
+
+}
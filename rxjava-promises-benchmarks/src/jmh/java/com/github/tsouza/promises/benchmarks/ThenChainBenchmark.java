@@ -0,0 +1,77 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 - Thiago Souza <tcostasouza@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tsouza.promises.benchmarks;
+
+import com.github.tsouza.promises.Deferred;
+import com.github.tsouza.promises.Promise;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tsouza.promises.Promises.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ThenChainBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int length;
+
+    @Benchmark
+    public Promise<Integer> chainOnResolved() {
+        return chain(resolve(0));
+    }
+
+    @Benchmark
+    public Promise<Integer> chainOnPending() {
+        Deferred<Integer> deferred = deferred();
+        Promise<Integer> promise = chain(deferred.promise());
+        deferred.resolver().resolve(0);
+        return promise;
+    }
+
+    @Benchmark
+    public Promise<Integer> chainReturningPromises() {
+        Promise<Integer> promise = resolve(0);
+        for (int i = 0; i < length; i++)
+            promise = promise.then(n -> resolve(n + 1));
+        return promise;
+    }
+
+    @Benchmark
+    public Promise<Integer> failOnRejected() {
+        Promise<Integer> promise = reject(new IllegalStateException());
+        for (int i = 0; i < length; i++)
+            promise = promise.fail(IllegalArgumentException.class, e -> value(0));
+        return promise;
+    }
+
+    private Promise<Integer> chain(Promise<Integer> promise) {
+        for (int i = 0; i < length; i++)
+            promise = promise.then(n -> value(n + 1));
+        return promise;
+    }
+
+}
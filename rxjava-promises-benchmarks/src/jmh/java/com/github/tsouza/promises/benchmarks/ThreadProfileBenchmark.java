@@ -0,0 +1,70 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 - Thiago Souza <tcostasouza@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tsouza.promises.benchmarks;
+
+import com.github.tsouza.promises.Resolver;
+import com.github.tsouza.promises.ThreadProfile;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tsouza.promises.Promises.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ThreadProfileBenchmark {
+
+    @Param({"CPU", "IO", "IMMEDIATE", "TRAMPOLINE", "VIRTUAL"})
+    public String name;
+
+    private ThreadProfile profile;
+
+    @Setup
+    public void setup() {
+        profile = ThreadProfile.named(name);
+    }
+
+    @Benchmark
+    public String deferAndGet() throws ExecutionException, InterruptedException {
+        return defer((Resolver<String> resolver) -> resolver.resolve("value"), profile).
+                future().get();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String deferAndGetContended() throws ExecutionException, InterruptedException {
+        return deferAndGet();
+    }
+
+    @Benchmark
+    public Integer deferThenChain() throws ExecutionException, InterruptedException {
+        return defer((Resolver<Integer> resolver) -> resolver.resolve(0), profile).
+                then(n -> value(n + 1)).
+                then(n -> value(n + 1)).
+                future().get();
+    }
+
+}
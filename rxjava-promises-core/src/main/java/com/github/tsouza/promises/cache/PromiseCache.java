@@ -0,0 +1,287 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 - Thiago Souza <tcostasouza@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tsouza.promises.cache;
+
+import com.github.tsouza.promises.Deferred;
+import com.github.tsouza.promises.Promise;
+import com.github.tsouza.promises.PromiseOrValue;
+import com.github.tsouza.promises.Promises;
+import com.github.tsouza.promises.Resolver;
+import com.github.tsouza.promises.functions.Mapper;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * A loading cache of promises. Concurrent {@link #get(Object)}s of a key share the promise of
+ * a single load; once fulfilled, the value stays cached until it expires or is evicted, while
+ * a rejected load is dropped at once so the next {@code get} retries it.
+ * <p>
+ * Fulfilled entries are evicted least recently used first once there are more than
+ * {@link Builder#maximumSize(long)} of them. Reads are looked up without locking, so the
+ * access order is recorded on a best effort basis: a read which finds the order being
+ * updated by another thread does not wait for it. Expiry is checked when an entry is read.
+ * <p>
+ * The promise returned is shared by every caller of the key, so cancelling it cancels the
+ * load for all of them and drops the entry.
+ */
+public class PromiseCache<K, V> {
+
+    private final Mapper<K, PromiseOrValue<V>> loader;
+    private final long maximumSize;
+    private final long expireAfterWriteNanos;
+    private final LongSupplier ticker;
+
+    private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final LinkedHashMap<K, Entry<V>> accessOrder = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadSuccesses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+
+    private PromiseCache(Builder builder, Mapper<K, PromiseOrValue<V>> loader) {
+        this.loader = loader;
+        this.maximumSize = builder.maximumSize;
+        this.expireAfterWriteNanos = builder.expireAfterWriteNanos;
+        this.ticker = builder.ticker;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Promise<V> get(K key) {
+        for (;;) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                if (!entry.expired(ticker.getAsLong(), expireAfterWriteNanos)) {
+                    hits.increment();
+                    if (entry.loaded)
+                        touch(key);
+                    return entry.promise;
+                }
+                remove(key, entry);
+            }
+
+            Deferred<V> deferred = Promises.deferred();
+            entry = new Entry<>(deferred.promise());
+            if (entries.putIfAbsent(key, entry) == null) {
+                misses.increment();
+                load(key, entry, deferred.resolver());
+                return entry.promise;
+            }
+        }
+    }
+
+    public void invalidate(K key) {
+        Entry<V> entry = entries.remove(key);
+        if (entry != null)
+            forget(key, entry);
+    }
+
+    public void invalidateAll() {
+        for (K key : entries.keySet())
+            invalidate(key);
+    }
+
+    /**
+     * Returns the number of entries, including the ones being loaded and the ones expired
+     * but not read since.
+     */
+    public long size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long hits = getHits(), requests = hits + getMisses();
+        return requests == 0 ? 1 : (double) hits / requests;
+    }
+
+    public long getLoadSuccesses() {
+        return loadSuccesses.sum();
+    }
+
+    public long getLoadFailures() {
+        return loadFailures.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getMeanLoadTimeNanos() {
+        long loads = getLoadSuccesses() + getLoadFailures();
+        return loads == 0 ? 0 : totalLoadTime.sum() / loads;
+    }
+
+    private void load(K key, Entry<V> entry, Resolver<V> resolver) {
+        long start = ticker.getAsLong();
+        Promise<V> loading;
+        try {
+            PromiseOrValue<V> promiseOrValue = loader.map(key);
+            loading = promiseOrValue != null ? Promises.resolve(promiseOrValue) :
+                    Promises.reject(new NullPointerException("loader returned null for " + key));
+        } catch (Throwable e) {
+            loading = Promises.reject(e);
+        }
+        Promise<V> loaded = loading;
+        resolver.onCancel(() -> {
+            remove(key, entry);
+            loaded.cancel();
+        });
+        loaded.done(value -> {
+            long now = ticker.getAsLong();
+            totalLoadTime.add(now - start);
+            loadSuccesses.increment();
+            entry.written = now;
+            entry.loaded = true;
+            admit(key, entry);
+            resolver.resolve(value);
+        }, reason -> {
+            totalLoadTime.add(ticker.getAsLong() - start);
+            loadFailures.increment();
+            remove(key, entry);
+            resolver.reject(reason);
+        });
+    }
+
+    private void admit(K key, Entry<V> entry) {
+        evictionLock.lock();
+        try {
+            // invalidated meanwhile: forget() ran before this entry could be listed
+            if (entries.get(key) != entry)
+                return;
+            accessOrder.put(key, entry);
+            Iterator<Map.Entry<K, Entry<V>>> eldest = accessOrder.entrySet().iterator();
+            while (accessOrder.size() > maximumSize) {
+                Map.Entry<K, Entry<V>> evicted = eldest.next();
+                eldest.remove();
+                if (entries.remove(evicted.getKey(), evicted.getValue()))
+                    evictions.increment();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void touch(K key) {
+        if (evictionLock.tryLock())
+            try {
+                accessOrder.get(key);
+            } finally {
+                evictionLock.unlock();
+            }
+    }
+
+    private void remove(K key, Entry<V> entry) {
+        if (entries.remove(key, entry))
+            forget(key, entry);
+    }
+
+    private void forget(K key, Entry<V> entry) {
+        if (!entry.loaded)
+            return;
+        evictionLock.lock();
+        try {
+            accessOrder.remove(key, entry);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static final class Entry<V> {
+        final Promise<V> promise;
+        volatile boolean loaded;
+        long written;
+
+        Entry(Promise<V> promise) {
+            this.promise = promise;
+        }
+
+        boolean expired(long now, long expireAfterWriteNanos) {
+            return loaded && now - written >= expireAfterWriteNanos;
+        }
+    }
+
+    public static final class Builder {
+
+        private long maximumSize = Long.MAX_VALUE;
+        private long expireAfterWriteNanos = Long.MAX_VALUE;
+        private LongSupplier ticker = System::nanoTime;
+
+        private Builder() {
+        }
+
+        /**
+         * Bounds the number of fulfilled entries kept.
+         */
+        public Builder maximumSize(long maximumSize) {
+            if (maximumSize < 0)
+                throw new IllegalArgumentException("maximumSize must not be negative: " + maximumSize);
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * Expires fulfilled entries once {@code duration} has passed since they were loaded.
+         */
+        public Builder expireAfterWrite(long duration, TimeUnit unit) {
+            if (duration < 0)
+                throw new IllegalArgumentException("duration must not be negative: " + duration);
+            this.expireAfterWriteNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Sets the source of time, in nanoseconds, for expiry and load times.
+         */
+        public Builder ticker(LongSupplier ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public <K, V> PromiseCache<K, V> build(Mapper<K, PromiseOrValue<V>> loader) {
+            return new PromiseCache<>(this, loader);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 - Thiago Souza <tcostasouza@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tsouza.promises.internal;
+
+import com.github.tsouza.promises.spi.Instrumentation;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Opt-in async stack traces: a sample of deferred promises and {@code then()} stages
+ * records the user code frame which created it, and a rejection passing through a sampled
+ * promise gets that frame attached as a suppressed {@link AsyncSite}.
+ * <p>
+ * Enabled through {@link Instrumentation#traceSampling(double)}, or the
+ * {@value Instrumentation#TRACE_SAMPLING_PROPERTY} system property, set to the sampled
+ * fraction, e.g. {@code 0.01}. The rate is read once, so when disabled every guard is folded away.
+ */
+final class AsyncTraces {
+
+    static final double RATE = Instrumentation.traceSampling();
+    static final boolean ENABLED = RATE > 0;
+
+    private static final String[] LIBRARY = {
+            "com.github.tsouza.promises.internal.",
+            "com.github.tsouza.promises.rx.",
+            "com.github.tsouza.promises.Promise",
+            "com.github.tsouza.promises.Deferred",
+            "java.",
+            "sun."
+    };
+
+    private AsyncTraces() {
+    }
+
+    static boolean sample() {
+        return RATE >= 1 || ThreadLocalRandom.current().nextDouble() < RATE;
+    }
+
+    /**
+     * Returns a promise settled like {@code promise}, which tags its rejections with the
+     * current call site.
+     */
+    static <R> RxPromiseAdapter<R> trace(RxPromiseAdapter<R> promise) {
+        StackTraceElement site = callSite();
+        if (site == null)
+            return promise;
+        Traced<R> traced = new Traced<>(site);
+        traced.dependOn(promise);
+        promise.listen(traced);
+        return traced;
+    }
+
+    private static StackTraceElement callSite() {
+        for (StackTraceElement frame : new Throwable().getStackTrace())
+            if (!isLibrary(frame.getClassName()))
+                return frame;
+        return null;
+    }
+
+    private static boolean isLibrary(String className) {
+        for (String prefix : LIBRARY)
+            if (className.startsWith(prefix))
+                return true;
+        return false;
+    }
+
+    static final class Traced<R> extends RxPromiseAdapter<R> implements AtomicPromise.Listener<R> {
+
+        private final StackTraceElement site;
+
+        Traced(StackTraceElement site) {
+            this.site = site;
+        }
+
+        @Override
+        public void onSettled(AtomicPromise<R> source) {
+            Listener<R> next = relay(source);
+            if (next != null)
+                next.onSettled(this);
+        }
+
+        /**
+         * Adopts {@code source}, returning the only listener to notify so chains of stages
+         * stay fused.
+         */
+        Listener<R> relay(AtomicPromise<R> source) {
+            Throwable reason = source.getReason();
+            if (reason != null)
+                reason.addSuppressed(new AsyncSite(site));
+            return adoptFused(source);
+        }
+    }
+
+    /**
+     * Where a promise a rejection went through was created. Carries no stack trace of its own.
+     */
+    static final class AsyncSite extends Throwable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final StackTraceElement site;
+
+        AsyncSite(StackTraceElement site) {
+            super(null, null, false, false);
+            this.site = site;
+        }
+
+        @Override
+        public String getMessage() {
+            return "rejection passed through a promise created at " + site;
+        }
+    }
+}
@@ -0,0 +1,494 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 - Thiago Souza <tcostasouza@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tsouza.promises.internal;
+
+import com.github.tsouza.promises.Promise;
+import com.github.tsouza.promises.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Lock-free promise state machine.
+ * <p>
+ * The whole state lives in a single volatile word which is either:
+ * <ul>
+ *     <li>{@code null}: pending, nobody is listening yet;</li>
+ *     <li>a {@link Listener}: pending, with a single listener stored inline;</li>
+ *     <li>a {@link Listeners} stack: pending, with several listeners;</li>
+ *     <li>a {@link Rejection}: rejected;</li>
+ *     <li>anything else: fulfilled with that value ({@link #NULL} stands for {@code null}).</li>
+ * </ul>
+ * Transitions are done by CAS, so settling publishes the outcome safely to every
+ * thread that observes the state afterwards.
+ * <p>
+ * Cancelling rejects the promise with a {@link CancellationException} and releases its
+ * upstream: either the promise it is waiting on, which gets cancelled too when this
+ * promise is its only listener, or the cancellation callbacks of a deferred.
+ */
+public class AtomicPromise<R> {
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<AtomicPromise, Object> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(AtomicPromise.class, Object.class, "state");
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<AtomicPromise, Object> UPSTREAM =
+            AtomicReferenceFieldUpdater.newUpdater(AtomicPromise.class, Object.class, "upstream");
+
+    private static final Object NULL = new Object();
+    private static final Object SETTLED = new Object();
+    // fulfilled with a primitive value, held by the subclass
+    private static final Object PRIMITIVE = new Object();
+
+    private volatile Object state;
+    private volatile Object upstream;
+
+    public AtomicPromise() {
+        if (Metrics.ENABLED)
+            Metrics.METRICS.created();
+    }
+
+    public boolean isFulfilled() {
+        Object current = state;
+        return isSettled(current) && !(current instanceof Rejection);
+    }
+
+    public boolean isRejected() {
+        return state instanceof Rejection;
+    }
+
+    public boolean isCancelled() {
+        return getReason() instanceof CancellationException;
+    }
+
+    public boolean isDone() {
+        return isSettled(state);
+    }
+
+    @SuppressWarnings("unchecked")
+    public R getResult() {
+        Object current = state;
+        if (!isSettled(current) || current instanceof Rejection || current == NULL)
+            return null;
+        if (current == PRIMITIVE)
+            return (R) boxPrimitive();
+        if (current instanceof Boxed)
+            return (R) ((Boxed) current).value;
+        return (R) current;
+    }
+
+    /**
+     * Returns the rejection reason like {@link #getReason()}, marking the rejection as handled.
+     */
+    protected Throwable handleReason() {
+        Object current = state;
+        if (!(current instanceof Rejection))
+            return null;
+        ((Rejection) current).handled = true;
+        return ((Rejection) current).reason;
+    }
+
+    public Throwable getReason() {
+        Object current = state;
+        return current instanceof Rejection ?
+                ((Rejection) current).reason : null;
+    }
+
+    public boolean fulfill(R result) {
+        return settle(outcomeOf(result));
+    }
+
+    /**
+     * Fulfills this promise with the primitive value its subclass holds, which must be
+     * written before calling this.
+     */
+    protected boolean fulfillPrimitive() {
+        return settle(PRIMITIVE);
+    }
+
+    protected boolean isPrimitive() {
+        return state == PRIMITIVE;
+    }
+
+    /**
+     * Boxes the primitive value of a promise fulfilled by {@link #fulfillPrimitive()}.
+     */
+    protected Object boxPrimitive() {
+        throw new IllegalStateException();
+    }
+
+    public boolean reject(Throwable reason) {
+        return settle(new Rejection(reason));
+    }
+
+    public boolean cancel() {
+        return abort(new CancellationException());
+    }
+
+    /**
+     * Rejects this promise and releases its upstream, like {@link #cancel()} does.
+     * The upstream is released before listeners are notified.
+     */
+    public boolean abort(Throwable reason) {
+        Object listeners = transition(new Rejection(reason));
+        if (listeners == SETTLED)
+            return false;
+        release(UPSTREAM.getAndSet(this, null));
+        if (listeners != null)
+            notifyListeners(listeners);
+        return true;
+    }
+
+    /**
+     * Registers a callback to be run if this promise gets cancelled.
+     */
+    public void onCancel(Runnable callback) {
+        depend(callback, true);
+    }
+
+    /**
+     * Records the promise this one is waiting on, so cancellation can be propagated to it.
+     */
+    protected void dependOn(Object promise) {
+        depend(promise, false);
+    }
+
+    /**
+     * Forgets {@code promise} as upstream once it is settled.
+     */
+    protected void forget(Object promise) {
+        Object current = upstream;
+        if (current == promise || current instanceof Adoption && ((Adoption<?>) current).source == promise)
+            UPSTREAM.compareAndSet(this, current, null);
+    }
+
+    private void depend(Object dependency, boolean keep) {
+        // settled otherwise, this promise can no longer be cancelled: nothing to keep
+        if (isDone() && !isCancelled())
+            return;
+        Object next;
+        for (;;) {
+            Object current = upstream;
+            // cancellation callbacks are always kept, a settled upstream promise is replaced
+            next = current == null || (!keep && !(current instanceof Runnable)) ?
+                    dependency : (Runnable) () -> {
+                        release(current);
+                        release(dependency);
+                    };
+            if (UPSTREAM.compareAndSet(this, current, next))
+                break;
+        }
+        if (isCancelled())
+            release(UPSTREAM.getAndSet(this, null));
+        else if (isDone())
+            UPSTREAM.compareAndSet(this, next, null);
+    }
+
+    /**
+     * Settles this promise with the same outcome of {@code source}, which must be done.
+     * Outcomes are immutable, so the state word itself is shared.
+     */
+    public boolean adopt(AtomicPromise<? extends R> source) {
+        boolean settled = settle(adopted(source));
+        forget(source);
+        return settled;
+    }
+
+    /**
+     * Settles this promise with a mapper result: promises are followed, values are unwrapped
+     * and anything else fulfills this promise as is.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void become(Object promiseOrValue) {
+        if (promiseOrValue == this)
+            reject(new IllegalStateException("a promise can not be resolved with itself"));
+        else if (promiseOrValue instanceof AtomicPromise && this instanceof Listener) {
+            dependOn(promiseOrValue);
+            ((AtomicPromise<R>) promiseOrValue).listen((Listener<R>) this);
+        } else if (promiseOrValue instanceof AtomicPromise) {
+            Adoption<R> adoption = new Adoption<>(this, (AtomicPromise<R>) promiseOrValue);
+            dependOn(adoption);
+            adoption.source.listen(adoption);
+        } else if (promiseOrValue instanceof Promise) {
+            dependOn(promiseOrValue);
+            ((Promise<R>) promiseOrValue).done(this::fulfill, this::reject);
+        } else if (promiseOrValue instanceof Value)
+            fulfill(((Value<R>) promiseOrValue).get());
+        else
+            fulfill((R) promiseOrValue);
+    }
+
+    /**
+     * Registers a listener to be called once this promise is settled. If it is
+     * already settled, the listener is called right away on the calling thread.
+     */
+    public void listen(Listener<R> listener) {
+        for (;;) {
+            Object current = state;
+            if (isSettled(current)) {
+                if (current instanceof Rejection)
+                    ((Rejection) current).handled = true;
+                listener.onSettled(this);
+                return;
+            }
+            Object next = current == null ? listener : new Listeners(listener, current);
+            if (STATE.compareAndSet(this, current, next))
+                return;
+        }
+    }
+
+    /**
+     * Drops {@code listener}, cancelling this promise if nobody else is listening to it.
+     */
+    void releaseListener(Object listener) {
+        if (STATE.compareAndSet(this, listener, null))
+            cancel();
+    }
+
+    /**
+     * Drops {@code listener} if this promise is still pending, without cancelling it.
+     */
+    void unlisten(Object listener) {
+        for (;;) {
+            Object current = state;
+            if (isSettled(current))
+                return;
+            Object next = without(current, listener);
+            if (next == current || STATE.compareAndSet(this, current, next))
+                return;
+        }
+    }
+
+    /**
+     * Returns {@code listeners} without {@code listener}, copying the nodes above it.
+     */
+    private static Object without(Object listeners, Object listener) {
+        if (listeners == listener)
+            return null;
+        List<Object> above = new ArrayList<>();
+        Object node = listeners;
+        while (node instanceof Listeners && ((Listeners) node).listener != listener) {
+            above.add(((Listeners) node).listener);
+            node = ((Listeners) node).next;
+        }
+        Object rest;
+        if (node instanceof Listeners)
+            rest = ((Listeners) node).next;
+        else if (node == listener)
+            rest = null;
+        else
+            return listeners;
+        for (int i = above.size() - 1; i >= 0; i--)
+            rest = rest == null ? above.get(i) : new Listeners(above.get(i), rest);
+        return rest;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private void release(Object upstream) {
+        if (upstream instanceof AtomicPromise)
+            ((AtomicPromise) upstream).releaseListener(this);
+        else if (upstream instanceof Adoption)
+            ((Adoption) upstream).source.releaseListener(upstream);
+        else if (upstream instanceof Promise)
+            ((Promise) upstream).cancel();
+        else if (upstream instanceof Runnable)
+            ((Runnable) upstream).run();
+    }
+
+    private boolean settle(Object outcome) {
+        Object listeners = transition(outcome);
+        if (listeners == SETTLED)
+            return false;
+        if (listeners != null)
+            notifyListeners(listeners);
+        return true;
+    }
+
+    /**
+     * Like {@link #fulfill(Object)}, except that a single listener is returned instead
+     * of being notified, so the caller can notify it without nesting another frame.
+     */
+    protected Listener<R> fulfillFused(R result) {
+        return settleFused(outcomeOf(result));
+    }
+
+    /**
+     * Like {@link #reject(Throwable)}, returning a single listener as {@link #fulfillFused} does.
+     */
+    protected Listener<R> rejectFused(Throwable reason) {
+        return settleFused(new Rejection(reason));
+    }
+
+    /**
+     * Like {@link #adopt(AtomicPromise)}, returning a single listener as {@link #fulfillFused} does.
+     */
+    protected Listener<R> adoptFused(AtomicPromise<? extends R> source) {
+        Listener<R> listener = settleFused(adopted(source));
+        forget(source);
+        return listener;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Listener<R> settleFused(Object outcome) {
+        Object listeners = transition(outcome);
+        if (listeners == SETTLED || listeners == null)
+            return null;
+        if (listeners instanceof Listener)
+            return (Listener<R>) listeners;
+        notifyListeners(listeners);
+        return null;
+    }
+
+    /**
+     * Moves to {@code outcome}, returning the listeners to notify or {@link #SETTLED}.
+     */
+    private Object transition(Object outcome) {
+        for (;;) {
+            Object current = state;
+            if (isSettled(current))
+                return SETTLED;
+            if (STATE.compareAndSet(this, current, outcome)) {
+                if (Metrics.ENABLED)
+                    Metrics.settled(this, outcome instanceof Rejection);
+                if (current == null && outcome instanceof Rejection &&
+                        UnhandledRejections.enabled(((Rejection) outcome).reason))
+                    UnhandledRejections.watch(this, (Rejection) outcome);
+                return current;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void notifyListeners(Object listeners) {
+        if (listeners instanceof Listener) {
+            ((Listener<R>) listeners).onSettled(this);
+            return;
+        }
+
+        // listeners are stacked, notify them in registration order
+        int size = 1;
+        for (Object node = listeners; node instanceof Listeners; node = ((Listeners) node).next)
+            size++;
+
+        Object[] ordered = new Object[size];
+        Object node = listeners;
+        for (int i = size - 1; i > 0; i--) {
+            ordered[i] = ((Listeners) node).listener;
+            node = ((Listeners) node).next;
+        }
+        ordered[0] = node;
+
+        for (Object listener : ordered)
+            ((Listener<R>) listener).onSettled(this);
+    }
+
+    /**
+     * Outcomes are shared when adopted, except primitive ones, which are boxed, and
+     * rejections that may be watched: each promise tracks whether its own rejection was handled.
+     */
+    private static Object adopted(AtomicPromise<?> source) {
+        Object outcome = source.state;
+        if (outcome == PRIMITIVE)
+            return outcomeOf(source.getResult());
+        if (outcome instanceof Rejection && UnhandledRejections.enabled(((Rejection) outcome).reason))
+            return new Rejection(((Rejection) outcome).reason);
+        return outcome;
+    }
+
+    private static boolean isSettled(Object state) {
+        return state != null &&
+                !(state instanceof Listener) &&
+                !(state instanceof Listeners);
+    }
+
+    private static Object outcomeOf(Object result) {
+        if (result == null)
+            return NULL;
+        if (result instanceof Listener || result instanceof Listeners ||
+                result instanceof Rejection || result instanceof Boxed)
+            return new Boxed(result);
+        return result;
+    }
+
+    static void report(Throwable e) {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+    }
+
+    @FunctionalInterface
+    public interface Listener<R> {
+        public void onSettled(AtomicPromise<R> source);
+    }
+
+    /**
+     * Listens to a promise being adopted on behalf of a promise which is not a listener itself,
+     * so it can be released by identity.
+     */
+    private static final class Adoption<R> implements Listener<R> {
+        private final AtomicPromise<R> target;
+        private final AtomicPromise<R> source;
+
+        Adoption(AtomicPromise<R> target, AtomicPromise<R> source) {
+            this.target = target;
+            this.source = source;
+        }
+
+        @Override
+        public void onSettled(AtomicPromise<R> source) {
+            target.adopt(source);
+        }
+    }
+
+    private static final class Listeners {
+        private final Object listener;
+        private final Object next;
+
+        Listeners(Object listener, Object next) {
+            this.listener = listener;
+            this.next = next;
+        }
+    }
+
+    static final class Rejection {
+        final Throwable reason;
+        // set once something observed the rejection, see UnhandledRejections
+        volatile boolean handled;
+
+        Rejection(Throwable reason) {
+            this.reason = reason;
+        }
+    }
+
+    private static final class Boxed {
+        private final Object value;
+
+        Boxed(Object value) {
+            this.value = value;
+        }
+    }
+
+}
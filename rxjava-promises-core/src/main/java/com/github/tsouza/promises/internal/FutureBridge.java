@@ -0,0 +1,167 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 - Thiago Souza <tcostasouza@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tsouza.promises.internal;
+
+import com.github.tsouza.promises.Promise;
+import com.github.tsouza.promises.Resolver;
+import com.github.tsouza.promises.ThreadProfile;
+import com.github.tsouza.promises.spi.DeferredManager;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+
+/**
+ * Settles a resolver out of a {@link Future} without parking a thread per future:
+ * {@link CompletionStage}s, our own promises and Guava's {@code ListenableFuture}s (when on
+ * the classpath) are bridged by callback, any other future is watched by the shared
+ * {@link FuturePoller}.
+ */
+final class FutureBridge {
+
+    private static final Method ADD_LISTENER = listenableFutureAddListener();
+
+    private FutureBridge() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static <R> void bridge(DeferredManager manager, Future<R> future, ThreadProfile profile,
+                           long timeout, TimeUnit unit, Resolver<R> resolver) {
+        if (future.isDone()) {
+            complete(future, settleOn(manager, profile, resolver));
+            return;
+        }
+
+        resolver.onCancel(() -> future.cancel(true));
+
+        // neither the poller nor the timer thread ever run continuations themselves
+        Resolver<R> offThread = settleOn(manager, profile == null ? ThreadProfile.IO : profile, resolver);
+
+        if (!(future instanceof CompletionStage) && !(future instanceof AtomicPromise) &&
+                (ADD_LISTENER == null || !ADD_LISTENER.getDeclaringClass().isInstance(future))) {
+            FuturePoller.INSTANCE.watch(future, offThread, unit != null,
+                    unit == null ? 0 : System.nanoTime() + unit.toNanos(timeout));
+            return;
+        }
+
+        HashedWheelTimer.Timeout expiry = unit == null ? null : HashedWheelTimer.INSTANCE.schedule(
+                () -> offThread.reject(new TimeoutException()), timeout, unit);
+        Resolver<R> target = settleOn(manager, profile, resolver);
+
+        if (future instanceof CompletionStage) {
+            ((CompletionStage<R>) future).whenComplete((result, error) -> {
+                if (expiry != null)
+                    expiry.cancel();
+                if (error == null)
+                    target.resolve(result);
+                else
+                    target.reject(unwrap(error));
+            });
+        } else if (future instanceof AtomicPromise) {
+            ((AtomicPromise<R>) future).listen(source -> {
+                if (expiry != null)
+                    expiry.cancel();
+                complete(future, target);
+            });
+        } else {
+            try {
+                ADD_LISTENER.invoke(future, (Runnable) () -> {
+                    if (expiry != null)
+                        expiry.cancel();
+                    complete(future, target);
+                }, (Executor) Runnable::run);
+            } catch (ReflectiveOperationException e) {
+                resolver.reject(e);
+            }
+        }
+    }
+
+    static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ?
+                error.getCause() : error;
+    }
+
+    static <R> void complete(Future<R> future, Resolver<R> resolver) {
+        boolean interrupted = false;
+        try {
+            for (;;) {
+                try {
+                    resolver.resolve(future.get());
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    resolver.reject(e.getCause());
+                    return;
+                } catch (CancellationException e) {
+                    resolver.reject(e);
+                    return;
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    private static <R> Resolver<R> settleOn(DeferredManager manager, ThreadProfile profile, Resolver<R> resolver) {
+        if (profile == null || profile == ThreadProfile.IMMEDIATE)
+            return resolver;
+        return new Resolver<R>() {
+            @Override
+            public void resolve(R result) {
+                manager.schedule(profile, target -> target.resolve(result), resolver);
+            }
+
+            @Override
+            public void reject(Throwable exception) {
+                manager.schedule(profile, target -> target.reject(exception), resolver);
+            }
+
+            @Override
+            public void chain(Promise<R> promise) {
+                manager.schedule(profile, target -> target.chain(promise), resolver);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return resolver.isCancelled();
+            }
+
+            @Override
+            public void onCancel(Runnable callback) {
+                resolver.onCancel(callback);
+            }
+        };
+    }
+
+    private static Method listenableFutureAddListener() {
+        try {
+            return Class.forName("com.google.common.util.concurrent.ListenableFuture").
+                    getMethod("addListener", Runnable.class, Executor.class);
+        } catch (ClassNotFoundException | NoSuchMethodException | LinkageError e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 - Thiago Souza <tcostasouza@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tsouza.promises.internal;
+
+import com.github.tsouza.promises.Resolver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single daemon thread watching every plain {@link Future} bridged into a promise.
+ * <p>
+ * Futures are polled with {@link Future#isDone()}; the poll interval doubles each
+ * round nothing completes (up to {@link #MAX_BACKOFF}) and drops back to
+ * {@link #MIN_BACKOFF} as soon as something does. The thread parks indefinitely
+ * while there is nothing to watch.
+ */
+final class FuturePoller implements Runnable {
+
+    static final FuturePoller INSTANCE = new FuturePoller();
+
+    private static final long MIN_BACKOFF = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_BACKOFF = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final Queue<Entry<?>> submitted = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    private volatile Thread thread;
+
+    private FuturePoller() {
+    }
+
+    <R> void watch(Future<R> future, Resolver<R> resolver, boolean timed, long deadline) {
+        submitted.offer(new Entry<>(future, resolver, timed, deadline));
+        if (started.compareAndSet(false, true)) {
+            Thread poller = new Thread(this, "rxjava-promises-future-poller");
+            poller.setDaemon(true);
+            thread = poller;
+            poller.start();
+        } else {
+            Thread poller = thread;
+            if (poller != null)
+                LockSupport.unpark(poller);
+        }
+    }
+
+    @Override
+    public void run() {
+        List<Entry<?>> watched = new ArrayList<>();
+        long backoff = MIN_BACKOFF;
+
+        for (;;) {
+            for (Entry<?> entry; (entry = submitted.poll()) != null; )
+                watched.add(entry);
+
+            long now = System.nanoTime();
+            long nextDeadline = Long.MAX_VALUE;
+            boolean progress = false;
+
+            int kept = 0;
+            for (int i = 0; i < watched.size(); i++) {
+                Entry<?> entry = watched.get(i);
+                try {
+                    if (entry.future.isDone()) {
+                        entry.complete();
+                        progress = true;
+                        continue;
+                    }
+                    if (entry.timed && now - entry.deadline >= 0) {
+                        entry.resolver.reject(new TimeoutException());
+                        progress = true;
+                        continue;
+                    }
+                } catch (Throwable e) {
+                    AtomicPromise.report(e);
+                    continue;
+                }
+                if (entry.timed)
+                    nextDeadline = Math.min(nextDeadline, entry.deadline - now);
+                watched.set(kept++, entry);
+            }
+            watched.subList(kept, watched.size()).clear();
+
+            if (watched.isEmpty()) {
+                backoff = MIN_BACKOFF;
+                LockSupport.park(this);
+                continue;
+            }
+
+            backoff = progress ? MIN_BACKOFF : Math.min(backoff * 2, MAX_BACKOFF);
+            LockSupport.parkNanos(this, Math.min(backoff, nextDeadline));
+        }
+    }
+
+    private static final class Entry<R> {
+        private final Future<R> future;
+        private final Resolver<R> resolver;
+        private final boolean timed;
+        private final long deadline;
+
+        Entry(Future<R> future, Resolver<R> resolver, boolean timed, long deadline) {
+            this.future = future;
+            this.resolver = resolver;
+            this.timed = timed;
+            this.deadline = deadline;
+        }
+
+        void complete() {
+            FutureBridge.complete(future, resolver);
+        }
+    }
+
+}
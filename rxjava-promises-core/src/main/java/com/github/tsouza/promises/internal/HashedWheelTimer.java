@@ -0,0 +1,204 @@
+package com.github.tsouza.promises.internal;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed wheel timer: a single daemon thread advancing a wheel of {@link #WHEEL_SIZE}
+ * buckets every {@link #TICK} nanoseconds, expiring the timeouts hashed into the current
+ * bucket. Scheduling and cancelling are O(1) and each pending timeout costs a single
+ * {@link Timeout} object. Precision is bounded by the tick, which is fine for deadlines.
+ * <p>
+ * Buckets are only touched by the timer thread: new and cancelled timeouts are handed
+ * over through queues. The thread parks indefinitely while there are no timeouts.
+ */
+final class HashedWheelTimer implements Runnable {
+
+    static final HashedWheelTimer INSTANCE = new HashedWheelTimer();
+
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final int WHEEL_SIZE = 512;
+    private static final int MASK = WHEEL_SIZE - 1;
+
+    private final Bucket[] wheel = new Bucket[WHEEL_SIZE];
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final long startTime = System.nanoTime();
+
+    private volatile Thread thread;
+    private long tick;
+
+    private HashedWheelTimer() {
+        for (int i = 0; i < WHEEL_SIZE; i++)
+            wheel[i] = new Bucket();
+    }
+
+    Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() - startTime + unit.toNanos(delay);
+        // a delay near Long.MAX_VALUE overflows into the past: saturate it instead
+        if (delay > 0 && deadline < 0)
+            deadline = Long.MAX_VALUE;
+        Timeout timeout = new Timeout(this, task, deadline);
+        scheduled.offer(timeout);
+        if (pending.getAndIncrement() == 0)
+            wakeUp();
+        return timeout;
+    }
+
+    private void wakeUp() {
+        if (started.compareAndSet(false, true)) {
+            Thread timer = new Thread(this, "rxjava-promises-timer");
+            timer.setDaemon(true);
+            thread = timer;
+            timer.start();
+        } else {
+            Thread timer = thread;
+            if (timer != null)
+                LockSupport.unpark(timer);
+        }
+    }
+
+    @Override
+    public void run() {
+        for (;;) {
+            long now = System.nanoTime() - startTime;
+
+            if (pending.get() == 0) {
+                // nothing to expire in between, skip straight to the current tick
+                tick = now / TICK;
+                LockSupport.park(this);
+                continue;
+            }
+
+            // a tick is processed once it is over, so every timeout in its bucket is due
+            for (; (tick + 1) * TICK <= now; tick++) {
+                removeCancelled();
+                transferScheduled();
+                pending.addAndGet(-wheel[(int) (tick & MASK)].expire());
+            }
+
+            LockSupport.parkNanos(this, (tick + 1) * TICK - (System.nanoTime() - startTime));
+        }
+    }
+
+    private void transferScheduled() {
+        for (Timeout timeout; (timeout = scheduled.poll()) != null; ) {
+            if (timeout.state == Timeout.CANCELLED) {
+                pending.decrementAndGet();
+                continue;
+            }
+            long deadlineTick = Math.max(timeout.deadline / TICK, tick);
+            timeout.rounds = (deadlineTick - tick) / WHEEL_SIZE;
+            wheel[(int) (deadlineTick & MASK)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        for (Timeout timeout; (timeout = cancelled.poll()) != null; )
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+                pending.decrementAndGet();
+            }
+    }
+
+    static final class Timeout {
+
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private static final int WAITING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final HashedWheelTimer timer;
+        private final Runnable task;
+        private final long deadline;
+        private volatile int state;
+
+        // owned by the timer thread
+        private long rounds;
+        private Bucket bucket;
+        private Timeout previous;
+        private Timeout next;
+
+        private Timeout(HashedWheelTimer timer, Runnable task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        boolean cancel() {
+            if (!STATE.compareAndSet(this, WAITING, CANCELLED))
+                return false;
+            timer.cancelled.offer(this);
+            return true;
+        }
+
+        private void expire() {
+            if (!STATE.compareAndSet(this, WAITING, EXPIRED))
+                return;
+            try {
+                task.run();
+            } catch (Throwable e) {
+                AtomicPromise.report(e);
+            }
+        }
+    }
+
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.previous = tail;
+                tail = timeout;
+            }
+        }
+
+        /**
+         * Expires the timeouts due this round and returns how many were removed.
+         */
+        int expire() {
+            int removed = 0;
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.rounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                    removed++;
+                } else {
+                    timeout.rounds--;
+                }
+                timeout = next;
+            }
+            return removed;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.previous != null)
+                timeout.previous.next = timeout.next;
+            else
+                head = timeout.next;
+            if (timeout.next != null)
+                timeout.next.previous = timeout.previous;
+            else
+                tail = timeout.previous;
+            timeout.previous = timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+
+}
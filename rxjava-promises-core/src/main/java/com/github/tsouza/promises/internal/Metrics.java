@@ -0,0 +1,52 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 - Thiago Souza <tcostasouza@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tsouza.promises.internal;
+
+import com.github.tsouza.promises.spi.Instrumentation;
+import com.github.tsouza.promises.spi.PromiseMetrics;
+
+/**
+ * The metrics in use, as constants: with the no-op default every {@code if (ENABLED)}
+ * guard is folded away by the JIT.
+ */
+final class Metrics {
+
+    static final PromiseMetrics METRICS = Instrumentation.metrics();
+    static final boolean ENABLED = METRICS != PromiseMetrics.NOOP;
+
+    private Metrics() {
+    }
+
+    static void settled(AtomicPromise<?> promise, boolean rejected) {
+        METRICS.settled(rejected, promise instanceof Timed ?
+                System.nanoTime() - ((Timed<?>) promise).created : -1);
+    }
+
+    /**
+     * A deferred promise, which also records when it was created.
+     */
+    static final class Timed<R> extends RxPromiseAdapter<R> {
+        private final long created = System.nanoTime();
+    }
+}
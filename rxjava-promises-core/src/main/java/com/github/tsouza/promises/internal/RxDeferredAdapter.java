@@ -29,11 +29,14 @@ import com.github.tsouza.promises.Resolver;
 
 public class RxDeferredAdapter<R> implements Deferred<R>, Resolver<R> {
 
-    private final RxObserverAdapter<R> rxPromise = new RxObserverAdapter<>();
+    private final RxPromiseAdapter<R> promise = Metrics.ENABLED ?
+            new Metrics.Timed<>() : new RxPromiseAdapter<>();
+    private final RxPromiseAdapter<R> traced = AsyncTraces.ENABLED && AsyncTraces.sample() ?
+            AsyncTraces.trace(promise) : promise;
 
     @Override
     public Promise<R> promise() {
-        return new RxPromiseAdapter<>(rxPromise);
+        return traced;
     }
 
     @Override
@@ -43,16 +46,26 @@ public class RxDeferredAdapter<R> implements Deferred<R>, Resolver<R> {
 
     @Override
     public void resolve(R result) {
-        rxPromise.fulfill(result);
+        promise.fulfill(result);
     }
 
     @Override
     public void reject(Throwable exception) {
-        rxPromise.reject(exception);
+        promise.reject(exception);
     }
 
     @Override
     public void chain(Promise<R> promise) {
-        promise.done(this::resolve, this::reject);
+        this.promise.become(promise);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return promise.isCancelled();
+    }
+
+    @Override
+    public void onCancel(Runnable callback) {
+        promise.onCancel(callback);
     }
 }
@@ -24,24 +24,61 @@
 package com.github.tsouza.promises.internal;
 
 import com.github.tsouza.promises.Deferred;
+import com.github.tsouza.promises.DoubleDeferred;
+import com.github.tsouza.promises.DoublePromise;
+import com.github.tsouza.promises.LongDeferred;
+import com.github.tsouza.promises.LongPromise;
 import com.github.tsouza.promises.Promise;
 import com.github.tsouza.promises.Resolver;
 import com.github.tsouza.promises.ThreadProfile;
 import com.github.tsouza.promises.functions.Receiver;
 import com.github.tsouza.promises.spi.DeferredManager;
 import rx.Scheduler;
+import rx.functions.Action0;
 import rx.schedulers.Schedulers;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The RxJava backed {@link DeferredManager}. Each {@link ThreadProfile} is mapped to a
+ * {@link Scheduler}; built-in profiles default to RxJava's global schedulers and can be
+ * remapped, along with any named profile, through {@link #builder()} or
+ * {@link #register(ThreadProfile, Executor)}.
+ */
 public class RxDeferredManager implements DeferredManager {
 
+    private final ConcurrentMap<ThreadProfile, Scheduler> schedulers = new ConcurrentHashMap<>();
+
+    public RxDeferredManager() {
+        schedulers.put(ThreadProfile.CPU, Schedulers.computation());
+        schedulers.put(ThreadProfile.IO, Schedulers.io());
+        schedulers.put(ThreadProfile.IMMEDIATE, Schedulers.immediate());
+        schedulers.put(ThreadProfile.TRAMPOLINE, Schedulers.trampoline());
+
+        Executor virtual = virtualThreadExecutor();
+        schedulers.put(ThreadProfile.VIRTUAL, virtual != null ? Schedulers.from(virtual) : Schedulers.io());
+    }
+
+    private RxDeferredManager(Builder builder) {
+        this();
+        schedulers.putAll(builder.schedulers);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
     @Override
     public <R> Deferred<R> deferred() {
         return new RxDeferredAdapter<>();
     }
 
-    @Override @SuppressWarnings({"unchecked", "rawtypes"})
+    @Override
     public <R> Promise<R> resolved(Object value) {
-        return new RxPromiseAdapter(value);
+        return RxPromiseAdapter.resolved(value);
     }
 
     @Override
@@ -49,11 +86,73 @@ public class RxDeferredManager implements DeferredManager {
         return new RxPromiseAdapter<>(exception);
     }
 
+    @Override
+    public LongDeferred deferredLong() {
+        return new RxLongPromise();
+    }
+
+    @Override
+    public DoubleDeferred deferredDouble() {
+        return new RxDoublePromise();
+    }
+
+    @Override
+    public LongPromise resolvedLong(long value) {
+        return new RxLongPromise(value);
+    }
+
+    @Override
+    public DoublePromise resolvedDouble(double value) {
+        return new RxDoublePromise(value);
+    }
+
+    @Override
+    public <R> Promise<R> from(Future<R> future, ThreadProfile profile, long timeout, TimeUnit unit) {
+        RxDeferredAdapter<R> deferred = new RxDeferredAdapter<>();
+        FutureBridge.bridge(this, future, profile, timeout, unit, deferred);
+        return deferred.promise();
+    }
+
+    @Override
+    public <R> Promise<R> from(CompletionStage<R> stage) {
+        RxPromiseAdapter<R> promise = new RxPromiseAdapter<>();
+        if (stage instanceof Future)
+            promise.onCancel(() -> ((Future<?>) stage).cancel(true));
+        stage.whenComplete((result, error) -> {
+            if (error == null)
+                promise.fulfill(result);
+            else
+                promise.reject(FutureBridge.unwrap(error));
+        });
+        return promise;
+    }
+
+    @Override
+    public <R> Promise<R> delayed(Object promiseOrValue, long delay, TimeUnit unit) {
+        RxPromiseAdapter<R> promise = new RxPromiseAdapter<>();
+        // the timer thread never runs continuations itself
+        HashedWheelTimer.Timeout timeout = HashedWheelTimer.INSTANCE.schedule(
+                () -> execute(ThreadProfile.CPU, () -> promise.become(promiseOrValue)), delay, unit);
+        promise.onCancel(timeout::cancel);
+        return promise;
+    }
+
+    @Override
+    public void register(ThreadProfile profile, Executor executor) {
+        register(profile, Schedulers.from(executor));
+    }
+
+    public void register(ThreadProfile profile, Scheduler scheduler) {
+        schedulers.put(profile, scheduler);
+    }
+
     @Override
     public <R> void schedule(ThreadProfile profile, Receiver<Resolver<R>> receiver, Resolver<R> resolver) {
         Scheduler scheduler = getSchedulerFor(profile);
         Scheduler.Worker worker = scheduler.createWorker();
-        worker.schedule(() -> {
+        Action0 task = () -> {
+            if (resolver.isCancelled())
+                return;
             try {
                 receiver.receive(resolver);
             } catch (Throwable e) {
@@ -63,16 +162,90 @@ public class RxDeferredManager implements DeferredManager {
                     worker.unsubscribe();
                 }
             }
-        });
+        };
+
+        if (Metrics.ENABLED) {
+            AtomicBoolean pending = new AtomicBoolean(true);
+            long queued = System.nanoTime();
+            Action0 measured = task;
+            task = () -> {
+                if (pending.compareAndSet(true, false))
+                    Metrics.METRICS.started(profile, System.nanoTime() - queued);
+                measured.call();
+            };
+            resolver.onCancel(() -> {
+                if (pending.compareAndSet(true, false))
+                    Metrics.METRICS.dropped(profile);
+            });
+            Metrics.METRICS.scheduled(profile);
+        }
+
+        resolver.onCancel(worker::unsubscribe);
+        worker.schedule(task);
+    }
+
+    @Override
+    public void execute(ThreadProfile profile, Runnable task) {
+        Scheduler.Worker worker = getSchedulerFor(profile).createWorker();
+        Action0 action = () -> {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                AtomicPromise.report(e);
+            } finally {
+                worker.unsubscribe();
+            }
+        };
+
+        if (Metrics.ENABLED) {
+            long queued = System.nanoTime();
+            Action0 measured = action;
+            action = () -> {
+                Metrics.METRICS.started(profile, System.nanoTime() - queued);
+                measured.call();
+            };
+            Metrics.METRICS.scheduled(profile);
+        }
+
+        worker.schedule(action);
     }
 
     private Scheduler getSchedulerFor(ThreadProfile profile) {
-        switch (profile) {
-            case CPU: return Schedulers.computation();
-            case IMMEDIATE: return Schedulers.immediate();
-            case IO: return Schedulers.io();
-            case TRAMPOLINE: return Schedulers.trampoline();
-            default: throw new InternalError();
+        Scheduler scheduler = schedulers.get(profile);
+        if (scheduler == null)
+            throw new IllegalArgumentException("no executor registered for thread profile " + profile);
+        return scheduler;
+    }
+
+    /**
+     * Looked up reflectively, so the library still runs on Java 8.
+     */
+    private static Executor virtualThreadExecutor() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    public static final class Builder {
+
+        private final Map<ThreadProfile, Scheduler> schedulers = new HashMap<>();
+
+        private Builder() {
+        }
+
+        public Builder executor(ThreadProfile profile, Executor executor) {
+            return scheduler(profile, Schedulers.from(executor));
+        }
+
+        public Builder scheduler(ThreadProfile profile, Scheduler scheduler) {
+            schedulers.put(profile, scheduler);
+            return this;
+        }
+
+        public RxDeferredManager build() {
+            return new RxDeferredManager(this);
         }
     }
 
@@ -0,0 +1,151 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 - Thiago Souza <tcostasouza@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tsouza.promises.internal;
+
+import com.github.tsouza.promises.DoubleDeferred;
+import com.github.tsouza.promises.DoublePromise;
+import com.github.tsouza.promises.functions.DoubleMapper;
+import com.github.tsouza.promises.functions.DoubleReceiver;
+import com.github.tsouza.promises.functions.Receiver;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A {@link DoublePromise} holding its value in a primitive field. It is its own deferred.
+ */
+public class RxDoublePromise extends RxPromiseAdapter<Double> implements DoublePromise, DoubleDeferred {
+
+    private static final AtomicIntegerFieldUpdater<RxDoublePromise> CLAIMED =
+            AtomicIntegerFieldUpdater.newUpdater(RxDoublePromise.class, "claimed");
+
+    private double value;
+    // only the first resolve() may write the value
+    private volatile int claimed;
+
+    public RxDoublePromise() {
+    }
+
+    public RxDoublePromise(double value) {
+        resolve(value);
+    }
+
+    @Override
+    public DoublePromise promise() {
+        return this;
+    }
+
+    @Override
+    public boolean resolve(double result) {
+        if (!CLAIMED.compareAndSet(this, 0, 1))
+            return false;
+        value = result;
+        return fulfillPrimitive();
+    }
+
+    @Override
+    protected Object boxPrimitive() {
+        return value;
+    }
+
+    @Override
+    public DoublePromise mapDouble(DoubleMapper mapper) {
+        if (isDone()) {
+            if (isRejected())
+                return this;
+            try {
+                return new RxDoublePromise(mapper.map(doubleValue()));
+            } catch (Throwable e) {
+                RxDoublePromise rejected = new RxDoublePromise();
+                rejected.reject(e);
+                return rejected;
+            }
+        }
+        Stage stage = new Stage(mapper);
+        stage.dependOn(this);
+        listen(stage);
+        return stage;
+    }
+
+    @Override
+    public void doneDouble(DoubleReceiver success, Receiver<Throwable> failure) {
+        if (isDone())
+            deliverDouble(success, failure);
+        else
+            listen(source -> deliverDouble(success, failure));
+    }
+
+    @Override
+    public double awaitDouble() throws Exception {
+        awaitSettled();
+        return doubleValue();
+    }
+
+    private void deliverDouble(DoubleReceiver success, Receiver<Throwable> failure) {
+        if (isRejected()) {
+            deliverRejection(failure);
+            return;
+        }
+        try {
+            success.receive(doubleValue());
+        } catch (Throwable e) {
+            if (failure != null)
+                try {
+                    failure.receive(e);
+                } catch (Throwable again) {
+                    report(again);
+                }
+            else
+                UnhandledRejections.unhandled(e);
+        }
+    }
+
+    private double doubleValue() {
+        return isPrimitive() ? value : getResult();
+    }
+
+    static final class Stage extends RxDoublePromise implements Listener<Double> {
+
+        private final DoubleMapper mapper;
+
+        Stage(DoubleMapper mapper) {
+            this.mapper = mapper;
+        }
+
+        @Override
+        public void onSettled(AtomicPromise<Double> source) {
+            forget(source);
+            if (isDone())
+                return;
+            if (source.isRejected()) {
+                adopt(source);
+                return;
+            }
+            try {
+                resolve(mapper.map(((RxDoublePromise) source).doubleValue()));
+            } catch (Throwable e) {
+                reject(e);
+            }
+        }
+    }
+}
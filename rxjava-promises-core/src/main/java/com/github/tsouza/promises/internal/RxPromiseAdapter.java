@@ -25,6 +25,8 @@ package com.github.tsouza.promises.internal;
 
 import com.github.tsouza.promises.Promise;
 import com.github.tsouza.promises.PromiseOrValue;
+import com.github.tsouza.promises.Promises;
+import com.github.tsouza.promises.ThreadProfile;
 import com.github.tsouza.promises.Value;
 import com.github.tsouza.promises.functions.Callable;
 import com.github.tsouza.promises.functions.Mapper;
@@ -32,157 +34,161 @@ import com.github.tsouza.promises.functions.Receiver;
 import com.github.tsouza.promises.functions.Spread;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
 
-public class RxPromiseAdapter<R> implements Promise<R> {
+import static com.github.tsouza.promises.Promises.value;
 
-    private final RxObserverAdapter<R> rxPromise;
+/**
+ * The core {@link Promise}. It is also its own {@link Future}: blocked getters park and
+ * wait on the promise's listeners, so {@link #future()} allocates nothing.
+ */
+public class RxPromiseAdapter<R> extends AtomicPromise<R> implements Promise<R>, Future<R> {
+
+    private static final RxPromiseAdapter<Object> NULL = new RxPromiseAdapter<>((Object) null);
+    private static final RxPromiseAdapter<Object> TRUE = new RxPromiseAdapter<>((Object) Boolean.TRUE);
+    private static final RxPromiseAdapter<Object> FALSE = new RxPromiseAdapter<>((Object) Boolean.FALSE);
+    private static final RxPromiseAdapter<Object> EMPTY_LIST = new RxPromiseAdapter<>((Object) Collections.emptyList());
+
+    public RxPromiseAdapter() {
+    }
 
     public RxPromiseAdapter(R value) {
-        rxPromise = new RxObserverAdapter<>();
-        rxPromise.fulfill(value);
+        fulfill(value);
     }
 
     public RxPromiseAdapter(Throwable exception) {
-        rxPromise = new RxObserverAdapter<>();
-        rxPromise.reject(exception);
+        reject(exception);
     }
 
-    public RxPromiseAdapter(RxObserverAdapter<R> rxPromise) {
-        this.rxPromise = rxPromise;
+    /**
+     * Returns a fulfilled promise. Settled promises never change, so common
+     * values share a single instance.
+     */
+    @SuppressWarnings("unchecked")
+    public static <R> RxPromiseAdapter<R> resolved(Object value) {
+        if (value == null)
+            return (RxPromiseAdapter<R>) NULL;
+        if (value instanceof Boolean)
+            return (RxPromiseAdapter<R>) ((Boolean) value ? TRUE : FALSE);
+        if (value == Collections.emptyList())
+            return (RxPromiseAdapter<R>) EMPTY_LIST;
+        return new RxPromiseAdapter<>((R) value);
     }
 
-    @Override @SuppressWarnings("unchecked")
+    @Override
     public <NR> Promise<NR> then(Mapper<R, PromiseOrValue<NR>> mapper) {
-        return new RxPromiseAdapter<>(rxPromise.then((R r) -> chain(r, mapper)));
+        return chain(mapper, null);
     }
 
-    @Override @SuppressWarnings("unchecked")
+    @Override
     public <NR> Promise<NR> then(Mapper<R, PromiseOrValue<NR>> success, Mapper<Throwable, PromiseOrValue<R>> failure) {
-        return new RxPromiseAdapter<>(rxPromise.then(
-                (R r) -> chain(r, success),
-                (Throwable e) -> chain(e, failure)
-        ));
+        return chain(success, failure);
     }
 
-    @Override @SuppressWarnings("unchecked")
+    @Override
     public <T extends Throwable> Promise<R> fail(Class<T> exceptionType, Mapper<T, PromiseOrValue<R>> mapper) {
-        return new RxPromiseAdapter<>(rxPromise.fail((Throwable exception) -> {
-            if (!exceptionType.isAssignableFrom(exception.getClass()))
-                return rxPromise;
-            return chain((T) exception, mapper);
-        }));
+        return chain(null, (Throwable exception) -> {
+            if (!exceptionType.isInstance(exception))
+                throw exception;
+            return mapper.map(exceptionType.cast(exception));
+        });
     }
 
-    @Override @SuppressWarnings({"unchecked","rawtypes"})
+    @Override
     public Promise<R> tap(Mapper<R, Promise<?>> mapper) {
-        return new RxPromiseAdapter<>(rxPromise.then((R r) -> {
-            Promise<?> tapPromise = null;
-            try {
-                tapPromise = mapper.map(r);
-            } catch (Throwable e) {
-                rxPromise.reject(e);
-                return rxPromise;
-            }
+        return chain((R r) -> {
+            Promise<?> tapPromise = mapper.map(r);
             if (tapPromise == null)
-                return rxPromise;
-
-            RxObserverAdapter newPromise = new RxObserverAdapter();
-            tapPromise.done(newPromise::fulfill, newPromise::reject);
-            return newPromise;
-        }));
+                return value(r);
+            return tapPromise.then(ignored -> value(r));
+        }, null);
     }
+
     @Override
     public Promise<R> always(Callable<Promise<R>> callable) {
-        return new RxPromiseAdapter<>(rxPromise.always(() -> {
-            Promise<?> finallyPromise = null;
-            try {
-                finallyPromise = callable.call();
-            } catch (Throwable e) {
-                rxPromise.reject(e);
-            }
+        return chain((R r) -> {
+            Promise<?> finallyPromise = callable.call();
+            if (finallyPromise == null)
+                return value(r);
+            return finallyPromise.then(ignored -> value(r));
+        }, (Throwable e) -> {
+            Promise<?> finallyPromise = callable.call();
             if (finallyPromise == null)
-                return rxPromise;
-            RxObserverAdapter<R> newPromise = new RxObserverAdapter<>();
-            finallyPromise.done(success -> {
-                        if (rxPromise.isFulfilled())
-                            newPromise.fulfill(rxPromise.getResult());
-                        else
-                            newPromise.reject(rxPromise.getReason());
-                    },
-                    newPromise::reject);
-            return newPromise;
-        }));
+                throw e;
+            return finallyPromise.then(ignored -> { throw e; });
+        });
     }
 
     @Override @SuppressWarnings("unchecked")
     public <T1, T2, NR> Promise<NR> spread(Spread.Args2<T1, T2, PromiseOrValue<NR>> spread) {
-        return new RxPromiseAdapter<>(rxPromise.then((R r) ->
-                        chain(coerceToArray(r), input ->
-                                        spread.call(
-                                                (T1) safeGet(0, input),
-                                                (T2) safeGet(1, input))
-                        )
-        ));
+        return chain((R r) -> {
+            Object[] input = coerceToArray(r);
+            return spread.call(
+                    (T1) safeGet(0, input),
+                    (T2) safeGet(1, input));
+        }, null);
     }
 
     @Override @SuppressWarnings("unchecked")
     public <T1, T2, T3, NR> Promise<NR> spread(Spread.Args3<T1, T2, T3, PromiseOrValue<NR>> spread) {
-        return new RxPromiseAdapter<>(rxPromise.then((R r) ->
-                        chain(coerceToArray(r), input ->
-                                        spread.call(
-                                                (T1) safeGet(0, input),
-                                                (T2) safeGet(1, input),
-                                                (T3) safeGet(2, input))
-                        )
-        ));
+        return chain((R r) -> {
+            Object[] input = coerceToArray(r);
+            return spread.call(
+                    (T1) safeGet(0, input),
+                    (T2) safeGet(1, input),
+                    (T3) safeGet(2, input));
+        }, null);
     }
 
     @Override @SuppressWarnings("unchecked")
     public <T1, T2, T3, T4, NR> Promise<NR> spread(Spread.Args4<T1, T2, T3, T4, PromiseOrValue<NR>> spread) {
-        return new RxPromiseAdapter<>(rxPromise.then((R r) ->
-                        chain(coerceToArray(r), input ->
-                                        spread.call(
-                                                (T1) safeGet(0, input),
-                                                (T2) safeGet(1, input),
-                                                (T3) safeGet(2, input),
-                                                (T4) safeGet(3, input))
-                        )
-        ));
+        return chain((R r) -> {
+            Object[] input = coerceToArray(r);
+            return spread.call(
+                    (T1) safeGet(0, input),
+                    (T2) safeGet(1, input),
+                    (T3) safeGet(2, input),
+                    (T4) safeGet(3, input));
+        }, null);
     }
 
     @Override @SuppressWarnings("unchecked")
     public <T1, T2, T3, T4, T5, NR> Promise<NR> spread(Spread.Args5<T1, T2, T3, T4, T5, PromiseOrValue<NR>> spread) {
-        return new RxPromiseAdapter<>(rxPromise.then((R r) ->
-                        chain(coerceToArray(r), input ->
-                                        spread.call(
-                                                (T1) safeGet(0, input),
-                                                (T2) safeGet(1, input),
-                                                (T3) safeGet(2, input),
-                                                (T4) safeGet(3, input),
-                                                (T5) safeGet(4, input))
-                        )
-        ));
+        return chain((R r) -> {
+            Object[] input = coerceToArray(r);
+            return spread.call(
+                    (T1) safeGet(0, input),
+                    (T2) safeGet(1, input),
+                    (T3) safeGet(2, input),
+                    (T4) safeGet(3, input),
+                    (T5) safeGet(4, input));
+        }, null);
+    }
+
+    @Override
+    public Promise<R> timeout(long timeout, TimeUnit unit) {
+        if (isDone())
+            return this;
+        TimeoutStage<R> stage = new TimeoutStage<>();
+        stage.dependOn(this);
+        listen(stage);
+        // the timer thread never runs continuations itself
+        HashedWheelTimer.Timeout pending = HashedWheelTimer.INSTANCE.schedule(
+                () -> Promises.execute(stage, ThreadProfile.CPU), timeout, unit);
+        stage.timeout = pending;
+        if (stage.isDone())
+            pending.cancel();
+        return stage;
     }
 
     @Override
     public void done(Receiver<R> success, Receiver<Throwable> failure) {
-        rxPromise.done(() -> {
-            try {
-                if (rxPromise.isFulfilled())
-                    try {
-                        success.receive(rxPromise.getResult());
-                    } catch (Throwable e) {
-                        if (failure != null) failure.receive(e);
-                    }
-                else if (failure != null)
-                    failure.receive(rxPromise.getReason());
-            } catch (RuntimeException | Error e) {
-                throw e;
-            } catch (Throwable e) {
-                throw new RuntimeException(e);
-            }
-        });
+        if (isDone())
+            deliver(success, failure);
+        else
+            listen(source -> deliver(success, failure));
     }
 
     @Override
@@ -190,32 +196,159 @@ public class RxPromiseAdapter<R> implements Promise<R> {
         done(success, null);
     }
 
+    @Override
+    public void doneAsync(Receiver<R> success, Receiver<Throwable> failure, ThreadProfile profile) {
+        listen(source -> Promises.execute(() -> deliver(success, failure), profile));
+    }
+
     @Override
     public Future<R> future() {
-        CountDownLatch latch = new CountDownLatch(1);
-        rxPromise.done(latch::countDown);
-        return new FutureAdapter(latch);
+        return this;
+    }
+
+    @Override
+    public CompletionStage<R> toCompletionStage() {
+        LinkedStage<R> stage = new LinkedStage<>(this);
+        listen(stage);
+        return stage;
+    }
+
+    @Override
+    public R get() throws InterruptedException, ExecutionException {
+        if (!isDone())
+            await(false, 0);
+        return outcome();
+    }
+
+    @Override
+    public R get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!isDone() && !await(true, unit.toNanos(timeout)))
+            throw new TimeoutException();
+        return outcome();
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return cancel();
+    }
+
+    /**
+     * Blocks until this promise is settled, throwing its rejection reason unwrapped.
+     */
+    void awaitSettled() throws Exception {
+        if (!isDone())
+            await(false, 0);
+        Throwable reason = handleReason();
+        if (reason instanceof Exception)
+            throw (Exception) reason;
+        if (reason instanceof Error)
+            throw (Error) reason;
+        if (reason != null)
+            throw new ExecutionException(reason);
+    }
+
+    private R outcome() throws ExecutionException {
+        Throwable reason = handleReason();
+        if (reason instanceof CancellationException)
+            throw (CancellationException) reason;
+        if (reason != null)
+            throw new ExecutionException(reason);
+        return getResult();
     }
 
-    @SuppressWarnings({"rawtypes", "unchecked"})
-    private <I> RxObserverAdapter chain(I input, Mapper<I, ?> mapper) {
-        RxObserverAdapter newPromise = new RxObserverAdapter<>();
+    /**
+     * Parks the calling thread until this promise is settled, returning {@code false}
+     * if the timeout elapses first.
+     */
+    private boolean await(boolean timed, long nanos) throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+
+        Waiter<R> waiter = new Waiter<>(Thread.currentThread());
+        listen(waiter);
+
+        long deadline = timed ? System.nanoTime() + nanos : 0;
+        try {
+            while (!isDone()) {
+                if (timed) {
+                    nanos = deadline - System.nanoTime();
+                    if (nanos <= 0)
+                        return false;
+                    LockSupport.parkNanos(this, nanos);
+                } else
+                    LockSupport.park(this);
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+            }
+            return true;
+        } finally {
+            // a waiter which gave up must not pile up, nor keep this promise from being
+            // the sole listener of its upstream
+            waiter.thread = null;
+            unlisten(waiter);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private <NR> Promise<NR> chain(Mapper<R, ?> onFulfilled, Mapper<Throwable, ?> onRejected) {
+        if (!isDone()) {
+            Stage<R, NR> stage = new Stage<>(onFulfilled, onRejected);
+            stage.dependOn(this);
+            listen(stage);
+            return AsyncTraces.ENABLED && AsyncTraces.sample() ? AsyncTraces.trace(stage) : stage;
+        }
+
+        // already settled: run the mapper right away, or skip it altogether
+        // when the branch does not apply (e.g. fail() on a fulfilled promise)
+        boolean fulfilled = isFulfilled();
+        Mapper mapper = fulfilled ? onFulfilled : onRejected;
+        if (mapper == null)
+            return (Promise<NR>) this;
+
         Object promiseOrValue;
         try {
-            promiseOrValue = mapper.map(input);
+            promiseOrValue = mapper.map(fulfilled ? getResult() : handleReason());
         } catch (Throwable e) {
-            newPromise.reject(e);
-            return newPromise;
+            return new RxPromiseAdapter<>(e);
         }
 
         if (promiseOrValue instanceof Promise)
-            ((Promise<?>) promiseOrValue).done(newPromise::fulfill, newPromise::reject);
-        else if (promiseOrValue instanceof Value)
-            newPromise.fulfill(((Value) promiseOrValue).get());
-        else
-            newPromise.fulfill(promiseOrValue);
+            return (Promise<NR>) promiseOrValue;
+        if (promiseOrValue instanceof Value)
+            return resolved(((Value) promiseOrValue).get());
+        return resolved(promiseOrValue);
+    }
 
-        return newPromise;
+    /**
+     * Delivers a rejection to {@code failure}, or reports it as unhandled.
+     */
+    void deliverRejection(Receiver<Throwable> failure) {
+        try {
+            if (failure != null)
+                failure.receive(handleReason());
+            else
+                UnhandledRejections.unhandled(handleReason());
+        } catch (Throwable e) {
+            report(e);
+        }
+    }
+
+    private void deliver(Receiver<R> success, Receiver<Throwable> failure) {
+        try {
+            if (isFulfilled())
+                try {
+                    if (success != null) success.receive(getResult());
+                } catch (Throwable e) {
+                    if (failure != null) failure.receive(e);
+                    else UnhandledRejections.unhandled(e);
+                }
+            else if (failure != null)
+                failure.receive(handleReason());
+            else
+                UnhandledRejections.unhandled(handleReason());
+        } catch (Throwable e) {
+            report(e);
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -227,53 +360,163 @@ public class RxPromiseAdapter<R> implements Promise<R> {
     }
 
     private Object safeGet(int idx, Object[] array) {
-        return (array == null || idx > array.length) ? null : array[idx];
+        return (array == null || idx >= array.length) ? null : array[idx];
     }
 
-    class FutureAdapter implements Future<R> {
-        private final CountDownLatch latch;
+    /**
+     * A chained promise which is also the listener of its source, so each
+     * {@code then()} costs a single object.
+     * <p>
+     * Runs of stages settled by plain values are fused: each stage hands its only
+     * listener back instead of notifying it, and the next mapper runs in the same
+     * loop. Only a mapper returning a pending promise breaks the run.
+     * <p>
+     * Fusion is of notification only: every {@code then()} returns a promise the caller
+     * may observe later, so each stage is still allocated and settled.
+     */
+    static final class Stage<I, R> extends RxPromiseAdapter<R> implements Listener<I> {
+
+        private Mapper<I, ?> onFulfilled;
+        private Mapper<Throwable, ?> onRejected;
+
+        Stage(Mapper<I, ?> onFulfilled, Mapper<Throwable, ?> onRejected) {
+            this.onFulfilled = onFulfilled;
+            this.onRejected = onRejected;
+        }
+
+        @Override @SuppressWarnings({"unchecked", "rawtypes"})
+        public void onSettled(AtomicPromise<I> source) {
+            AtomicPromise from = source;
+            Stage stage = this;
+            do {
+                Listener next = stage.run(from);
+                from = stage;
+                while (next instanceof AsyncTraces.Traced) {
+                    AsyncTraces.Traced traced = (AsyncTraces.Traced) next;
+                    next = traced.relay(from);
+                    from = traced;
+                }
+                if (next instanceof Stage)
+                    stage = (Stage) next;
+                else {
+                    if (next != null)
+                        next.onSettled(from);
+                    stage = null;
+                }
+            } while (stage != null);
+        }
+
+        /**
+         * Settles this stage out of {@code source}, returning its only listener when it was
+         * settled right away.
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Listener<R> run(AtomicPromise<I> source) {
+            forget(source);
+            if (isDone())
+                return null;
+
+            Mapper mapper;
+            Object input;
+            if (source.isFulfilled()) {
+                mapper = onFulfilled;
+                input = source.getResult();
+            } else {
+                mapper = onRejected;
+                input = source.getReason();
+            }
 
-        public FutureAdapter(CountDownLatch latch) {
-            this.latch = latch;
+            // mappers run once: if the mapper returns a promise, this stage
+            // listens to it and, from then on, simply adopts its outcome
+            onFulfilled = null;
+            onRejected = null;
+
+            if (mapper == null)
+                return adoptFused((AtomicPromise) source);
+
+            Object promiseOrValue;
+            try {
+                promiseOrValue = mapper.map(input);
+            } catch (Throwable e) {
+                return rejectFused(e);
+            }
+
+            if (promiseOrValue instanceof Promise || promiseOrValue == this) {
+                become(promiseOrValue);
+                return null;
+            }
+            if (promiseOrValue instanceof Value)
+                return fulfillFused(((Value<R>) promiseOrValue).get());
+            return fulfillFused((R) promiseOrValue);
         }
+    }
+
+    /**
+     * A promise which adopts its source, unless its timeout expires first. It is
+     * its own timer task.
+     */
+    static final class TimeoutStage<R> extends RxPromiseAdapter<R> implements Listener<R>, Runnable {
+
+        private volatile HashedWheelTimer.Timeout timeout;
+
         @Override
-        public boolean isDone() {
-            return rxPromise.isDone();
+        public void onSettled(AtomicPromise<R> source) {
+            HashedWheelTimer.Timeout pending = timeout;
+            if (pending != null)
+                pending.cancel();
+            adopt(source);
         }
 
         @Override
-        public synchronized R get() throws InterruptedException, ExecutionException {
-            if (isDone())
-                return getResult();
-            latch.await();
-            return getResult();
+        public void run() {
+            abort(new TimeoutException());
+        }
+    }
+
+    /**
+     * A {@link CompletableFuture} completed by its promise, which it cancels in turn.
+     */
+    static final class LinkedStage<R> extends CompletableFuture<R> implements Listener<R> {
+
+        private final RxPromiseAdapter<R> promise;
+
+        LinkedStage(RxPromiseAdapter<R> promise) {
+            this.promise = promise;
         }
 
         @Override
-        public R get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-            if (isDone())
-                return getResult();
-            latch.await(timeout, unit);
-            return getResult();
+        public void onSettled(AtomicPromise<R> source) {
+            if (source.isFulfilled())
+                complete(source.getResult());
+            else
+                completeExceptionally(source.getReason());
         }
 
         @Override
         public boolean cancel(boolean mayInterruptIfRunning) {
-            throw new UnsupportedOperationException("promises are not cancellable");
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled)
+                promise.releaseListener(this);
+            return cancelled;
         }
+    }
 
-        private R getResult() throws ExecutionException {
-            if (isDone()) {
-                if (rxPromise.getReason() != null)
-                    throw new ExecutionException(rxPromise.getReason());
-                return rxPromise.getResult();
-            }
-            return null;
+    /**
+     * A thread blocked in {@link #get()}, woken up once the promise settles.
+     */
+    static final class Waiter<R> implements Listener<R> {
+
+        private volatile Thread thread;
+
+        Waiter(Thread thread) {
+            this.thread = thread;
         }
 
         @Override
-        public boolean isCancelled() {
-            return false;
+        public void onSettled(AtomicPromise<R> source) {
+            Thread waiting = thread;
+            if (waiting != null)
+                LockSupport.unpark(waiting);
         }
     }
 }
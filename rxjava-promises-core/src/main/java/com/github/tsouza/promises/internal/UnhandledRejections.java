@@ -0,0 +1,108 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 - Thiago Souza <tcostasouza@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tsouza.promises.internal;
+
+import com.github.tsouza.promises.Promises;
+import com.github.tsouza.promises.functions.Receiver;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reports rejections nobody handles to {@link Promises#unhandledRejectionHandler()}.
+ * <p>
+ * Only promises rejected while nobody listens to them are watched, through a phantom
+ * reference: if one is collected before anything observed its rejection, the reason is
+ * reported by a daemon thread. Nothing is tracked while no handler is installed.
+ */
+final class UnhandledRejections implements Runnable {
+
+    private static final UnhandledRejections INSTANCE = new UnhandledRejections();
+
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+    // keeps watches reachable until their promise is collected
+    private final Set<Watch> watched = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    private UnhandledRejections() {
+    }
+
+    static boolean enabled(Throwable reason) {
+        return !(reason instanceof CancellationException) &&
+                Promises.unhandledRejectionHandler() != null;
+    }
+
+    /**
+     * Watches {@code promise}, unhandled until its {@code rejection} is marked handled.
+     */
+    static void watch(AtomicPromise<?> promise, AtomicPromise.Rejection rejection) {
+        INSTANCE.watched.add(new Watch(promise, rejection, INSTANCE.queue));
+        if (INSTANCE.started.compareAndSet(false, true)) {
+            Thread reaper = new Thread(INSTANCE, "rxjava-promises-unhandled-rejections");
+            reaper.setDaemon(true);
+            reaper.start();
+        }
+    }
+
+    static void unhandled(Throwable reason) {
+        Receiver<Throwable> handler = Promises.unhandledRejectionHandler();
+        if (handler == null || reason instanceof CancellationException)
+            return;
+        try {
+            handler.receive(reason);
+        } catch (Throwable e) {
+            AtomicPromise.report(e);
+        }
+    }
+
+    @Override
+    public void run() {
+        for (;;) {
+            Reference<?> collected;
+            try {
+                collected = queue.remove();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            Watch watch = (Watch) collected;
+            watched.remove(watch);
+            if (!watch.rejection.handled)
+                unhandled(watch.rejection.reason);
+        }
+    }
+
+    private static final class Watch extends PhantomReference<Object> {
+        private final AtomicPromise.Rejection rejection;
+
+        Watch(Object promise, AtomicPromise.Rejection rejection, ReferenceQueue<Object> queue) {
+            super(promise, queue);
+            this.rejection = rejection;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 - Thiago Souza <tcostasouza@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tsouza.promises.metrics;
+
+import com.github.tsouza.promises.ThreadProfile;
+import com.github.tsouza.promises.spi.PromiseMetrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Counting {@link PromiseMetrics}, cheap enough to be left on in production: counters are
+ * striped {@link LongAdder}s, so recording never contends.
+ * <p>
+ * The statistics can be read directly, exposed as a JMX MBean with {@link #registerMBean()},
+ * or bound to a Micrometer/Dropwizard style registry with {@link #bindTo(BiConsumer)}:
+ * <pre>
+ * PromiseStatistics statistics = new PromiseStatistics();
+ * Instrumentation.install(statistics);
+ * statistics.bindTo((name, value) -&gt; Gauge.builder(name, value, v -&gt; v.get().doubleValue()).register(registry));
+ * </pre>
+ */
+public class PromiseStatistics implements PromiseMetrics, PromiseStatisticsMXBean {
+
+    public static final String OBJECT_NAME = "com.github.tsouza.promises:type=PromiseStatistics";
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder fulfilled = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final Timer settleTime = new Timer();
+
+    private final ConcurrentMap<ThreadProfile, Queue> queues = new ConcurrentHashMap<>();
+
+    @Override
+    public void created() {
+        created.increment();
+    }
+
+    @Override
+    public void settled(boolean rejected, long nanos) {
+        (rejected ? this.rejected : fulfilled).increment();
+        if (nanos >= 0)
+            settleTime.record(nanos);
+    }
+
+    @Override
+    public void scheduled(ThreadProfile profile) {
+        queue(profile).depth.increment();
+    }
+
+    @Override
+    public void started(ThreadProfile profile, long delayNanos) {
+        Queue queue = queue(profile);
+        queue.depth.decrement();
+        queue.delay.record(delayNanos);
+    }
+
+    @Override
+    public void dropped(ThreadProfile profile) {
+        queue(profile).depth.decrement();
+    }
+
+    @Override
+    public long getCreated() {
+        return created.sum();
+    }
+
+    @Override
+    public long getFulfilled() {
+        return fulfilled.sum();
+    }
+
+    @Override
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long getPending() {
+        return Math.max(0, getCreated() - getFulfilled() - getRejected());
+    }
+
+    @Override
+    public long getMeanSettleTimeNanos() {
+        return settleTime.mean();
+    }
+
+    @Override
+    public long getMaxSettleTimeNanos() {
+        return settleTime.max.get();
+    }
+
+    @Override
+    public Map<String, Long> getQueueDepths() {
+        return perProfile(queue -> queue.depth.sum());
+    }
+
+    @Override
+    public Map<String, Long> getMeanSchedulingDelayNanos() {
+        return perProfile(queue -> queue.delay.mean());
+    }
+
+    @Override
+    public Map<String, Long> getMaxSchedulingDelayNanos() {
+        return perProfile(queue -> queue.delay.max.get());
+    }
+
+    /**
+     * Registers these statistics with the platform MBean server under {@link #OBJECT_NAME}.
+     */
+    public void registerMBean() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+    }
+
+    /**
+     * Hands a gauge per statistic to {@code gauges}, named {@code promises.*}. Per-profile
+     * gauges are bound for the profiles seen so far and the built-in ones.
+     */
+    public void bindTo(BiConsumer<String, Supplier<Number>> gauges) {
+        gauges.accept("promises.created", this::getCreated);
+        gauges.accept("promises.fulfilled", this::getFulfilled);
+        gauges.accept("promises.rejected", this::getRejected);
+        gauges.accept("promises.pending", this::getPending);
+        gauges.accept("promises.settle.time.mean", this::getMeanSettleTimeNanos);
+        gauges.accept("promises.settle.time.max", this::getMaxSettleTimeNanos);
+
+        for (ThreadProfile profile : new ThreadProfile[] {
+                ThreadProfile.CPU, ThreadProfile.IO, ThreadProfile.IMMEDIATE,
+                ThreadProfile.TRAMPOLINE, ThreadProfile.VIRTUAL })
+            queue(profile);
+
+        for (Map.Entry<ThreadProfile, Queue> entry : queues.entrySet()) {
+            String prefix = "promises.scheduler." + entry.getKey().name().toLowerCase() + ".";
+            Queue queue = entry.getValue();
+            gauges.accept(prefix + "queue.depth", queue.depth::sum);
+            gauges.accept(prefix + "delay.mean", queue.delay::mean);
+            gauges.accept(prefix + "delay.max", queue.delay.max::get);
+        }
+    }
+
+    private Queue queue(ThreadProfile profile) {
+        Queue queue = queues.get(profile);
+        return queue != null ? queue : queues.computeIfAbsent(profile, p -> new Queue());
+    }
+
+    private Map<String, Long> perProfile(ToLongFunction<Queue> statistic) {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<ThreadProfile, Queue> entry : queues.entrySet())
+            values.put(entry.getKey().name(), statistic.applyAsLong(entry.getValue()));
+        return values;
+    }
+
+    private static final class Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            count.increment();
+            total.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        long mean() {
+            long count = this.count.sum();
+            return count == 0 ? 0 : total.sum() / count;
+        }
+    }
+
+    private static final class Queue {
+        private final LongAdder depth = new LongAdder();
+        private final Timer delay = new Timer();
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 - Thiago Souza <tcostasouza@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tsouza.promises.rx;
+
+import com.github.tsouza.promises.Promise;
+import com.github.tsouza.promises.PromiseOrValue;
+import com.github.tsouza.promises.functions.Mapper;
+import rx.Observable;
+import rx.Subscriber;
+import rx.observers.SerializedSubscriber;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.tsouza.promises.Promises.resolve;
+
+/**
+ * Bridges promises into RxJava {@link Observable}s.
+ */
+public abstract class RxPromises {
+
+    public static <R> Observable<R> all(Object[] promisesOrValues) {
+        return all(Arrays.asList(promisesOrValues));
+    }
+
+    /**
+     * Emits the results of {@code promisesOrValues} in completion order, completing once
+     * all of them are fulfilled or failing on the first rejection.
+     */
+    public static <R> Observable<R> all(Collection<Object> promisesOrValues) {
+        return map(promisesOrValues, Mapper.noop());
+    }
+
+    public static <I, O> Observable<O> map(Object[] promisesOrValues, Mapper<I, PromiseOrValue<O>> mapper) {
+        return map(Arrays.asList(promisesOrValues), mapper);
+    }
+
+    /**
+     * Maps like {@link com.github.tsouza.promises.Promises#map(Collection, Mapper)}, but
+     * emits each result as soon as it settles instead of collecting them into a list.
+     */
+    @SuppressWarnings("unchecked")
+    public static <I, O> Observable<O> map(Collection<Object> promisesOrValues, Mapper<I, PromiseOrValue<O>> mapper) {
+        if (promisesOrValues == null || promisesOrValues.isEmpty())
+            return Observable.empty();
+        return Observable.create((Subscriber<? super O> subscriber) -> {
+            Subscriber<O> serialized = new SerializedSubscriber<>(subscriber);
+            AtomicInteger remaining = new AtomicInteger(promisesOrValues.size());
+            for (Object promiseOrValue : promisesOrValues) {
+                if (subscriber.isUnsubscribed())
+                    return;
+                ((Promise<I>) resolve(promiseOrValue)).then(mapper).done(result -> {
+                    if (subscriber.isUnsubscribed())
+                        return;
+                    serialized.onNext(result);
+                    if (remaining.decrementAndGet() == 0)
+                        serialized.onCompleted();
+                }, serialized::onError);
+            }
+        });
+    }
+
+}
@@ -23,19 +23,49 @@
  */
 package com.github.tsouza.promises.test;
 
+import com.github.tsouza.promises.AggregateException;
+import com.github.tsouza.promises.AsyncIterator;
+import com.github.tsouza.promises.Batcher;
 import com.github.tsouza.promises.Deferred;
+import com.github.tsouza.promises.LongDeferred;
+import com.github.tsouza.promises.LongPromise;
 import com.github.tsouza.promises.Promise;
+import com.github.tsouza.promises.Resolver;
+import com.github.tsouza.promises.RetryPolicy;
+import com.github.tsouza.promises.SettledResults;
+import com.github.tsouza.promises.ThreadProfile;
+import com.github.tsouza.promises.cache.PromiseCache;
+import com.github.tsouza.promises.internal.RxDeferredManager;
+import com.github.tsouza.promises.metrics.PromiseStatistics;
+import com.github.tsouza.promises.rx.RxPromises;
+import com.github.tsouza.promises.spi.Instrumentation;
 import org.junit.Test;
 
-import java.util.concurrent.ExecutionException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.github.tsouza.promises.Promises.*;
 import static com.google.common.util.concurrent.Futures.immediateFailedFuture;
 import static com.google.common.util.concurrent.Futures.immediateFuture;
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class PromiseTests {
 
@@ -54,6 +84,31 @@ public class PromiseTests {
         assertFulfillment(resolve(immediateFuture(true)), false);
     }
 
+    @Test
+    public void testPendingCompletableFutureFulfilled() throws ExecutionException, InterruptedException {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        Promise<Boolean> promise = resolve(future);
+        future.complete(true);
+        assertFulfillment(promise, false);
+    }
+
+    @Test
+    public void testPendingPlainFutureFulfilled() throws ExecutionException, InterruptedException {
+        FutureTask<Boolean> future = new FutureTask<>(() -> true);
+        Promise<Boolean> promise = resolve(future);
+        new Thread(future).start();
+        assertFulfillment(promise, false);
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void testPendingFutureTimeout() throws Throwable {
+        try {
+            resolve(new FutureTask<>(() -> true), 10, TimeUnit.MILLISECONDS).future().get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
     @Test(expected = ExecutionException.class)
     public void testAlreadyRejected() throws ExecutionException, InterruptedException {
         assertFulfillment(reject(new Exception()), true);
@@ -135,6 +190,81 @@ public class PromiseTests {
                         future().get());
     }
 
+    @Test
+    public void testMapWithBoundedConcurrency() throws ExecutionException, InterruptedException {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            values.add(i);
+
+        List<Integer> result = map(values, (Integer n) -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return defer((Resolver<Integer> resolver) -> {
+                inFlight.decrementAndGet();
+                resolver.resolve(n + 1);
+            }, ThreadProfile.IO);
+        }, 4).future().get();
+
+        assertEquals(100, result.size());
+        assertEquals((Object) 1, result.get(0));
+        assertEquals((Object) 100, result.get(99));
+        assertTrue(maxInFlight.get() <= 4);
+    }
+
+    @Test
+    public void testMapUnorderedOfValueList() throws ExecutionException, InterruptedException {
+        List<Integer> result = mapUnordered(asList(1, 2, 3), (Integer n) -> value(n + 1), 2).
+                future().get();
+        assertEquals(new HashSet<>(asList(2, 3, 4)), new HashSet<>(result));
+    }
+
+    @Test
+    public void testStreamInCompletionOrder() throws ExecutionException, InterruptedException {
+        Deferred<Integer> slow = deferred();
+        AsyncIterator<Integer> stream = stream(asList(slow.promise(), resolve(2)), (Integer n) -> value(n + 1));
+
+        assertTrue(stream.hasNext().future().get());
+        assertEquals((Object) 3, stream.next());
+
+        Promise<Boolean> hasNext = stream.hasNext();
+        slow.resolver().resolve(1);
+        assertTrue(hasNext.future().get());
+        assertEquals((Object) 2, stream.next());
+        assertEquals(false, stream.hasNext().future().get());
+    }
+
+    @Test
+    public void testStreamNextThrowsRejection() throws ExecutionException, InterruptedException {
+        IllegalStateException reason = new IllegalStateException();
+        Exception checked = new Exception();
+        AsyncIterator<Integer> stream = stream(new Object[] { reject(reason), reject(checked), resolve(3) });
+
+        try {
+            stream.next();
+            fail();
+        } catch (IllegalStateException e) {
+            assertSame(reason, e);
+        }
+        try {
+            stream.next();
+            fail();
+        } catch (CompletionException e) {
+            assertSame(checked, e.getCause());
+        }
+        assertTrue(stream.hasNext().future().get());
+        assertEquals((Object) 3, stream.next());
+        assertEquals(false, stream.hasNext().future().get());
+    }
+
+    @Test
+    public void testObservableMapOfPromiseList() {
+        assertEquals(new HashSet<>(asList(2, 3, 4)), new HashSet<>(
+                RxPromises.map(asList(resolve(1), defer(r -> r.resolve(2)), resolve(3)),
+                        (Integer n) -> value(n + 1)).
+                        toList().toBlocking().single()));
+    }
+
     @Test
     public void testJoinThenMapOfValueList() throws ExecutionException, InterruptedException {
         assertEquals(asList(2, 3, 4),
@@ -198,6 +328,78 @@ public class PromiseTests {
                         future().get());
     }
 
+    @Test
+    public void testReduceLargeList() throws ExecutionException, InterruptedException {
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < 1000000; i++)
+            values.add(i % 2 == 0 ? resolve(1) : 1);
+        assertEquals((Object) 1000000,
+                reduce(values, (Integer p, Integer c) -> value(p + c), 0).
+                        future().get());
+    }
+
+    @Test
+    public void testReduceEventuallyFulfilledList() throws ExecutionException, InterruptedException {
+        assertEquals((Object) 6,
+                reduce(asList(defer(r -> r.resolve(1)), 2, defer(r -> r.resolve(3))),
+                        (Integer p, Integer c) -> defer(r -> r.resolve(p + c)), 0).
+                        future().get());
+    }
+
+    @Test
+    public void testReduceKeepsSharedElements() throws ExecutionException, InterruptedException {
+        Deferred<Integer> shared = deferred(), lone = deferred();
+        Promise<Integer> doubled = shared.promise().then(n -> value(n * 2));
+        reduce(new Object[] { shared.promise() }, (Integer p, Integer c) -> value(p + c), 0).cancel();
+        reduce(new Object[] { lone.promise() }, (Integer p, Integer c) -> value(p + c), 0).cancel();
+        assertTrue(!shared.promise().isCancelled());
+        assertTrue(lone.promise().isCancelled());
+        shared.resolver().resolve(21);
+        assertEquals((Object) 42, doubled.future().get());
+    }
+
+    @Test
+    public void testCancelPropagatesThroughChain() {
+        Deferred<Object> outer = deferred();
+        Deferred<Object> inner = deferred();
+        outer.resolver().chain(inner.promise());
+        outer.promise().cancel();
+        assertTrue(inner.promise().isCancelled());
+
+        Deferred<Object> mapped = deferred();
+        Promise<Object> async = resolve(1).thenAsync(n -> mapped.promise(), ThreadProfile.IMMEDIATE);
+        async.cancel();
+        assertTrue(mapped.promise().isCancelled());
+    }
+
+    @Test
+    public void testCancelPropagatesUpstream() throws ExecutionException, InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        Promise<Object> source = defer((Resolver<Object> resolver) -> {
+            resolver.onCancel(() -> cancelled.set(true));
+            started.countDown();
+        }, ThreadProfile.IO);
+        started.await();
+
+        Future<Object> future = source.then(r -> value(r)).future();
+        assertTrue(future.cancel(true));
+        assertTrue(future.isCancelled());
+        assertTrue(source.isCancelled());
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    public void testCancelKeepsSharedUpstream() {
+        Deferred<Object> deferred = deferred();
+        Promise<Object> first = deferred.promise().then(r -> value(r));
+        Promise<Object> second = deferred.promise().then(r -> value(r));
+
+        assertTrue(first.cancel());
+        assertTrue(!deferred.promise().isCancelled());
+        assertTrue(!second.isCancelled());
+    }
+
     @Test
     public void testAlwaysReturningPromise() throws ExecutionException, InterruptedException {
         AtomicBoolean wasRejected = new AtomicBoolean(false);
@@ -212,6 +414,906 @@ public class PromiseTests {
         assertTrue(wasRejected.get());
     }
 
+    @Test
+    public void testListenersNotifiedInOrder() throws ExecutionException, InterruptedException {
+        Deferred<String> deferred = deferred();
+        StringBuilder order = new StringBuilder();
+        deferred.promise().done(r -> order.append(r).append(1));
+        deferred.promise().done(r -> order.append(r).append(2));
+        deferred.promise().done(r -> order.append(r).append(3));
+        deferred.resolver().resolve("a");
+        assertEquals("a1a2a3", order.toString());
+    }
+
+    @Test
+    public void testTapKeepsValue() throws ExecutionException, InterruptedException {
+        assertEquals("1", defer(receiver -> receiver.resolve("1")).
+                tap(r -> resolve(r + " 2")).
+                future().get());
+    }
+
+    @Test
+    public void testAlreadySettledFastPath() throws ExecutionException, InterruptedException {
+        Promise<Boolean> fulfilled = resolve(true);
+        assertSame(fulfilled, resolve(true));
+        assertSame(fulfilled, fulfilled.fail(e -> value(false)));
+
+        Promise<Object> rejected = reject(new Exception());
+        assertSame(rejected, rejected.then(r -> value(r)));
+        assertEquals("1 2", resolve("1").then(r -> value(r + " 2")).future().get());
+    }
+
+    @Test
+    public void testTimeout() throws InterruptedException {
+        Deferred<String> deferred = deferred();
+        Promise<String> promise = deferred.promise().timeout(50, TimeUnit.MILLISECONDS);
+        try {
+            promise.future().get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(deferred.resolver().isCancelled());
+    }
+
+    @Test
+    public void testTimeoutNotReached() throws ExecutionException, InterruptedException {
+        Deferred<String> deferred = deferred();
+        Promise<String> promise = deferred.promise().timeout(1, TimeUnit.SECONDS);
+        deferred.resolver().resolve("1");
+        assertEquals("1", promise.future().get());
+    }
+
+    @Test
+    public void testTimeoutNearLongMaxValue() throws ExecutionException, InterruptedException {
+        Deferred<String> deferred = deferred();
+        Promise<String> nanos = deferred.promise().timeout(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        Promise<String> days = deferred.promise().timeout(Long.MAX_VALUE, TimeUnit.DAYS);
+        // a later timeout firing means the timer went past the ticks of the two above
+        delay(resolve("1"), 50, TimeUnit.MILLISECONDS).future().get();
+        assertTrue(!nanos.future().isDone());
+        assertTrue(!days.future().isDone());
+        deferred.resolver().resolve("1");
+        assertEquals("1", nanos.future().get());
+    }
+
+    @Test
+    public void testDelay() throws ExecutionException, InterruptedException {
+        long start = System.nanoTime();
+        assertEquals("1", delay(resolve("1"), 50, TimeUnit.MILLISECONDS).future().get());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void testTimerThreadRunsNoContinuations() throws Exception {
+        String delayed = delay(value(1), 10, TimeUnit.MILLISECONDS).
+                then(n -> value(Thread.currentThread().getName())).future().get();
+        assertTrue(delayed, !delayed.contains("timer"));
+
+        Deferred<String> pending = deferred();
+        String timedOut = pending.promise().timeout(10, TimeUnit.MILLISECONDS).
+                fail(e -> value(Thread.currentThread().getName())).future().get();
+        assertTrue(timedOut, !timedOut.contains("timer"));
+    }
+
+    @Test
+    public void testTimedOutWaitersAreUnlinked() throws Exception {
+        Deferred<String> deferred = deferred();
+        for (int i = 0; i < 1000; i++)
+            try {
+                deferred.promise().future().get(0, TimeUnit.NANOSECONDS);
+                fail();
+            } catch (TimeoutException expected) {
+            }
+
+        // the stage is still the sole listener, so cancelling it reaches the deferred
+        Promise<String> stage = deferred.promise().then(s -> value(s));
+        stage.cancel();
+        assertTrue(deferred.resolver().isCancelled());
+
+        Deferred<String> shared = deferred();
+        AtomicInteger notified = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            shared.promise().done(s -> notified.incrementAndGet());
+            try {
+                shared.promise().future().get(0, TimeUnit.NANOSECONDS);
+                fail();
+            } catch (TimeoutException expected) {
+            }
+        }
+        shared.resolver().resolve("1");
+        assertEquals(3, notified.get());
+    }
+
+    @Test
+    public void testSettledPromiseDropsCancelCallbacks() throws Exception {
+        Deferred<String> deferred = deferred();
+        deferred.resolver().resolve("1");
+        Runnable onCancel = () -> fail("cancelled " + deferred);
+        WeakReference<Runnable> callback = new WeakReference<>(onCancel);
+        deferred.resolver().onCancel(onCancel);
+        onCancel = null;
+        for (int i = 0; i < 50 && callback.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertSame(null, callback.get());
+        assertTrue(!deferred.promise().cancel());
+    }
+
+    @Test
+    public void testFutureGetTimeout() throws ExecutionException, InterruptedException {
+        Deferred<String> deferred = deferred();
+        Future<String> future = deferred.promise().future();
+        assertSame(future, deferred.promise().future());
+        try {
+            future.get(10, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (TimeoutException e) {
+            assertTrue(!future.isDone());
+        }
+        deferred.resolver().resolve("1");
+        assertEquals("1", future.get());
+    }
+
+    @Test
+    public void testFutureConcurrentGetters() throws Exception {
+        Deferred<Integer> deferred = deferred();
+        Future<Integer> future = deferred.promise().future();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> getters = new ArrayList<>();
+            for (int i = 0; i < 8; i++)
+                getters.add(executor.submit(() -> future.get()));
+            Thread.sleep(50);
+            deferred.resolver().resolve(1);
+            for (Future<Integer> getter : getters)
+                assertEquals(Integer.valueOf(1), getter.get(1, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testToCompletionStage() throws Exception {
+        Deferred<String> deferred = deferred();
+        CompletableFuture<String> stage = deferred.promise().toCompletionStage().toCompletableFuture();
+        CompletableFuture<String> mapped = stage.thenApply(r -> r + " 2");
+        deferred.resolver().resolve("1");
+        assertEquals("1 2", mapped.get());
+
+        Deferred<String> cancelled = deferred();
+        cancelled.promise().toCompletionStage().toCompletableFuture().cancel(true);
+        assertTrue(cancelled.resolver().isCancelled());
+    }
+
+    @Test
+    public void testFromCompletionStage() throws Exception {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        Promise<String> promise = from(future.thenApply(r -> r + " 2"));
+        future.complete("1");
+        assertEquals("1 2", promise.future().get());
+
+        CompletableFuture<String> failing = new CompletableFuture<>();
+        Promise<String> rejected = from(failing.thenApply(r -> r));
+        failing.completeExceptionally(new IllegalStateException());
+        try {
+            rejected.future().get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        CompletableFuture<String> source = new CompletableFuture<>();
+        from(source).cancel();
+        assertTrue(source.isCancelled());
+    }
+
+    @Test
+    public void testNamedThreadProfile() throws Throwable {
+        ThreadProfile profile = ThreadProfile.named("test-registered");
+        assertSame(profile, ThreadProfile.named("test-registered"));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor(task -> new Thread(task, "test-registered-thread"));
+        try {
+            // registered on a private manager, so the shut down executor is not left behind
+            using(RxDeferredManager.builder().build(), () -> {
+                register(profile, executor);
+                assertEquals("test-registered-thread",
+                        defer((Resolver<String> resolver) -> resolver.resolve(Thread.currentThread().getName()), profile).
+                                future().get());
+                return null;
+            });
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testManagerBuilder() throws ExecutionException, InterruptedException {
+        ThreadProfile profile = ThreadProfile.named("test-builder");
+        ExecutorService executor = Executors.newSingleThreadExecutor(task -> new Thread(task, "test-builder-thread"));
+        try {
+            RxDeferredManager manager = RxDeferredManager.builder().
+                    executor(profile, executor).
+                    build();
+            Deferred<String> deferred = manager.deferred();
+            manager.schedule(profile, resolver -> resolver.resolve(Thread.currentThread().getName()), deferred.resolver());
+            assertEquals("test-builder-thread", deferred.promise().future().get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnregisteredThreadProfile() {
+        defer(resolver -> resolver.resolve(null), ThreadProfile.named("test-unregistered"));
+    }
+
+    @Test
+    public void testAwait() throws Exception {
+        assertEquals("1", defer((Resolver<String> resolver) -> resolver.resolve("1"), ThreadProfile.VIRTUAL).await());
+        try {
+            reject(new IllegalStateException()).await();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected, unwrapped
+        }
+    }
+
+    @Test
+    public void testScopedManager() throws Throwable {
+        ThreadProfile profile = ThreadProfile.named("test-scoped");
+        ExecutorService executor = Executors.newSingleThreadExecutor(task -> new Thread(task, "test-scoped-thread"));
+        try {
+            RxDeferredManager manager = RxDeferredManager.builder().
+                    executor(profile, executor).
+                    build();
+            assertEquals("test-scoped-thread", using(manager, () ->
+                    defer((Resolver<String> resolver) -> resolver.resolve(Thread.currentThread().getName()), profile).
+                            future().get()));
+        } finally {
+            executor.shutdown();
+        }
+
+        try {
+            defer(resolver -> resolver.resolve(null), profile);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // outside the scope the profile is unknown again
+        }
+    }
+
+    @Test
+    public void testLongSynchronousChain() throws ExecutionException, InterruptedException {
+        Deferred<Integer> deferred = deferred();
+        Promise<Integer> promise = deferred.promise();
+        for (int i = 0; i < 100000; i++)
+            promise = promise.then(n -> value(n + 1));
+        promise = promise.fail(e -> value(-1));
+        deferred.resolver().resolve(0);
+        assertEquals(Integer.valueOf(100000), promise.future().get());
+    }
+
+    @Test
+    public void testLongRejectedChain() throws InterruptedException {
+        Deferred<Integer> deferred = deferred();
+        Promise<Integer> promise = deferred.promise();
+        for (int i = 0; i < 100000; i++)
+            promise = promise.then(n -> value(n + 1));
+        deferred.resolver().reject(new IllegalStateException());
+        try {
+            promise.future().get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testThenAsync() throws Throwable {
+        ThreadProfile profile = ThreadProfile.named("test-async");
+        ExecutorService executor = Executors.newSingleThreadExecutor(task -> new Thread(task, "test-async-thread"));
+        try {
+            RxDeferredManager manager = RxDeferredManager.builder().
+                    executor(profile, executor).
+                    build();
+            assertEquals("test-async-thread", using(manager, () -> {
+                assertEquals("1 test-async-thread", resolve("1").
+                        thenAsync(r -> value(r + " " + Thread.currentThread().getName()), profile).
+                        future().get());
+                assertEquals("test-async-thread", reject(new Exception()).
+                        failAsync(e -> value(Thread.currentThread().getName()), profile).
+                        future().get());
+
+                CompletableFuture<String> received = new CompletableFuture<>();
+                resolve("1").doneAsync(r -> received.complete(Thread.currentThread().getName()), profile);
+                return received.get();
+            }));
+            assertEquals(null, resolve("1").thenAsync(r -> null, ThreadProfile.CPU).future().get());
+            assertEquals(null, reject(new Exception()).failAsync(e -> null, ThreadProfile.CPU).future().get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPromiseStatistics() throws Exception {
+        PromiseStatistics statistics = new PromiseStatistics();
+        statistics.created();
+        statistics.created();
+        statistics.created();
+        statistics.settled(false, 10);
+        statistics.settled(true, 30);
+        statistics.scheduled(ThreadProfile.IO);
+        statistics.scheduled(ThreadProfile.IO);
+        statistics.started(ThreadProfile.IO, 100);
+
+        assertEquals(1, statistics.getFulfilled());
+        assertEquals(1, statistics.getRejected());
+        assertEquals(1, statistics.getPending());
+        assertEquals(20, statistics.getMeanSettleTimeNanos());
+        assertEquals(30, statistics.getMaxSettleTimeNanos());
+        assertEquals(Long.valueOf(1), statistics.getQueueDepths().get("IO"));
+        assertEquals(Long.valueOf(100), statistics.getMaxSchedulingDelayNanos().get("IO"));
+
+        List<String> gauges = new ArrayList<>();
+        statistics.bindTo((name, value) -> gauges.add(name));
+        assertTrue(gauges.contains("promises.pending"));
+        assertTrue(gauges.contains("promises.scheduler.io.queue.depth"));
+
+        statistics.registerMBean();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(PromiseStatistics.OBJECT_NAME);
+        try {
+            assertEquals(1L, server.getAttribute(name, "Pending"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void testPromiseStatisticsWiring() throws Exception {
+        long[] counts = isolated(MetricsProbe.class);
+        assertEquals("created", 1, counts[0]);
+        assertEquals("pending", 1, counts[1]);
+        assertEquals("fulfilled", 1, counts[2]);
+        assertEquals("pending", 0, counts[3]);
+        assertEquals("rejected", 2, counts[4]);
+        assertEquals("cancelled", 1, counts[5]);
+        assertEquals("pending after doneAsync", 0, counts[6]);
+        assertEquals("IO queue depth", 0, counts[7]);
+    }
+
+    /**
+     * Runs {@code probe} in a fresh class loader, where metrics and trace sampling are not fixed yet.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T isolated(Class<? extends Callable<T>> probe) throws Exception {
+        URL[] classpath = {
+                location(Promise.class), location(RxDeferredManager.class),
+                location(rx.Observable.class), location(probe) };
+        try (URLClassLoader loader = new URLClassLoader(classpath, ClassLoader.getSystemClassLoader().getParent())) {
+            return ((Callable<T>) loader.loadClass(probe.getName()).newInstance()).call();
+        }
+    }
+
+    private static URL location(Class<?> type) {
+        return type.getProtectionDomain().getCodeSource().getLocation();
+    }
+
+    public static final class MetricsProbe implements Callable<long[]> {
+        @Override
+        public long[] call() throws Exception {
+            PromiseStatistics statistics = new PromiseStatistics();
+            Instrumentation.install(statistics);
+            // traced views are promises too, so keep them out of the counts
+            Instrumentation.traceSampling(0);
+            install(new RxDeferredManager());
+            long[] counts = new long[8];
+            // some promises are created once, when the library initializes
+            resolve(0);
+            long created = statistics.getCreated(), pending = statistics.getPending();
+
+            Deferred<Integer> deferred = deferred();
+            counts[0] = statistics.getCreated() - created;
+            counts[1] = statistics.getPending() - pending;
+            long fulfilled = statistics.getFulfilled();
+            deferred.resolver().resolve(1);
+            counts[2] = statistics.getFulfilled() - fulfilled;
+            counts[3] = statistics.getPending() - pending;
+
+            long rejected = statistics.getRejected();
+            Deferred<Integer> failing = deferred();
+            Promise<Integer> stage = failing.promise().then(n -> value(n + 1));
+            failing.resolver().reject(new Exception());
+            stage.fail(e -> value(0)).future().get();
+            counts[4] = statistics.getRejected() - rejected;
+
+            rejected = statistics.getRejected();
+            deferred().promise().cancel();
+            counts[5] = statistics.getRejected() - rejected;
+
+            CountDownLatch delivered = new CountDownLatch(100);
+            Promise<Integer> resolved = resolve(1);
+            for (int i = 0; i < 100; i++)
+                resolved.doneAsync(n -> delivered.countDown(), null, ThreadProfile.IO);
+            delivered.await();
+            Thread.sleep(50);
+            counts[6] = statistics.getPending() - pending;
+            counts[7] = statistics.getQueueDepths().getOrDefault("IO", 0L);
+            return counts;
+        }
+    }
+
+    @Test
+    public void testAsyncTracesTagRejections() throws Exception {
+        List<String> sites = isolated(TraceProbe.class);
+        assertTrue(sites.toString(), sites.stream().anyMatch(site ->
+                site.contains(TraceProbe.class.getName() + ".call(PromiseTests.java:")));
+    }
+
+    public static final class TraceProbe implements Callable<List<String>> {
+        @Override
+        public List<String> call() throws Exception {
+            Instrumentation.traceSampling(1);
+            install(new RxDeferredManager());
+
+            Deferred<Integer> deferred = deferred();
+            Promise<Integer> stage = deferred.promise().then(n -> value(n + 1));
+            deferred.resolver().reject(new Exception());
+            List<String> sites = new ArrayList<>();
+            try {
+                stage.future().get();
+            } catch (ExecutionException e) {
+                for (Throwable site : e.getCause().getSuppressed())
+                    sites.add(site.getMessage());
+            }
+            return sites;
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMetricsInstalledTooLate() {
+        Instrumentation.metrics();
+        Instrumentation.install(new PromiseStatistics());
+    }
+
+    @Test
+    public void testUnhandledRejectionInDone() {
+        Set<Throwable> unhandled = ConcurrentHashMap.newKeySet();
+        onUnhandledRejection(unhandled::add);
+        try {
+            Exception reason = new Exception();
+            reject(reason).done(r -> fail());
+            assertTrue(unhandled.contains(reason));
+        } finally {
+            onUnhandledRejection(null);
+        }
+    }
+
+    @Test
+    public void testUnhandledRejectionCollected() throws InterruptedException {
+        Set<Throwable> unhandled = ConcurrentHashMap.newKeySet();
+        onUnhandledRejection(unhandled::add);
+        try {
+            Exception handled = new Exception();
+            Exception dropped = new Exception();
+            reject(handled).fail(e -> value(null));
+            rejectUnobserved(dropped);
+
+            // collection is up to the JVM: keep churning the heap for a bounded while
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!unhandled.contains(dropped) && System.nanoTime() < deadline) {
+                List<byte[]> garbage = new ArrayList<>();
+                for (int i = 0; i < 16; i++)
+                    garbage.add(new byte[64 * 1024]);
+                garbage.clear();
+                System.gc();
+                Thread.sleep(20);
+            }
+            assertTrue(unhandled.contains(dropped));
+            assertTrue(!unhandled.contains(handled));
+        } finally {
+            onUnhandledRejection(null);
+        }
+    }
+
+    private static void rejectUnobserved(Exception reason) {
+        deferred().resolver().reject(reason);
+    }
+
+    @Test
+    public void testLongPromise() throws Exception {
+        LongDeferred deferred = deferredLong();
+        LongPromise promise = deferred.promise().mapLong(n -> n * 2).mapLong(n -> n + 1);
+        deferred.resolve(20);
+        assertEquals(41, promise.awaitLong());
+        assertEquals(Long.valueOf(41), promise.then(n -> value(n)).future().get());
+        assertEquals(3.5, resolveDouble(1.5).mapDouble(n -> n + 2).awaitDouble(), 0);
+    }
+
+    @Test
+    public void testReduceAndSumLong() throws Exception {
+        Deferred<Integer> pending = deferred();
+        LongPromise sum = sumLong(asList(1, resolveLong(2), pending.promise(), value(4L)));
+        pending.resolver().resolve(3);
+        assertEquals(10, sum.awaitLong());
+
+        assertEquals(24, reduceLong(new Object[] { 1, 2, 3, 4 }, (a, b) -> a * b, 1).awaitLong());
+        assertEquals(0.75, sumDouble(new Object[] { 0.25, resolveDouble(0.5) }).awaitDouble(), 0);
+
+        List<Object> numbers = new ArrayList<>();
+        for (int i = 1; i <= 100000; i++)
+            numbers.add(resolveLong(i));
+        assertEquals(5000050000L, sumLong(numbers).awaitLong());
+    }
+
+    @Test
+    public void testMapToLong() throws Exception {
+        long[] lengths = mapToLong(new Object[] { "a", resolve("bb"), defer(resolver -> resolver.resolve("ccc")) },
+                (String s) -> s.length()).future().get();
+        assertEquals("[1, 2, 3]", Arrays.toString(lengths));
+
+        double[] halves = mapToDouble(asList(1, 2), (Integer n) -> n / 2.0).future().get();
+        assertEquals("[0.5, 1.0]", Arrays.toString(halves));
+
+        assertEquals(0, mapToLong((List<Object>) null, (String s) -> s.length()).future().get().length);
+        assertEquals(0, mapToDouble((List<Object>) null, (String s) -> s.length()).future().get().length);
+        assertEquals(7, reduceLong((List<Object>) null, (a, b) -> a + b, 7).awaitLong());
+        assertEquals(0, sumDouble((List<Object>) null).awaitDouble(), 0);
+    }
+
+    @Test
+    public void testNumericCollectorsKeepSharedInputs() throws Exception {
+        LongDeferred count = deferredLong();
+        Deferred<String> name = deferred();
+        LongPromise doubled = count.promise().mapLong(n -> n * 2);
+        Promise<String> upper = name.promise().then(s -> value(s.toUpperCase()));
+
+        sumLong(asList(1, count.promise())).cancel();
+        mapToLong(new Object[] { name.promise() }, (String s) -> s.length()).cancel();
+        assertTrue(!count.promise().isCancelled());
+        assertTrue(!name.promise().isCancelled());
+
+        count.resolve(21);
+        name.resolver().resolve("shared");
+        assertEquals(42, doubled.awaitLong());
+        assertEquals("SHARED", upper.future().get());
+    }
+
+    @Test
+    public void testRaceCancelsLosers() throws Exception {
+        Deferred<String> slow = deferred();
+        Deferred<String> fast = deferred();
+        Promise<String> race = race(new Object[] { slow.promise(), fast.promise() });
+        fast.resolver().resolve("fast");
+        assertEquals("fast", race.future().get());
+        assertTrue(slow.promise().isCancelled());
+    }
+
+    @Test
+    public void testContestsRejectNullInputs() throws Exception {
+        List<Promise<?>> contests = asList(race((List<Object>) null), any((List<Object>) null), some(1, (List<Object>) null));
+        for (Promise<?> contest : contests)
+            try {
+                contest.future().get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalArgumentException);
+            }
+    }
+
+    @Test
+    public void testAnyAggregatesRejections() throws Exception {
+        Exception first = new Exception(), second = new Exception();
+        assertEquals("b", any(new Object[] { reject(first), resolve("b") }).future().get());
+        try {
+            any(new Object[] { reject(first), reject(second) }).future().get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AggregateException);
+            assertEquals(asList(first, second), ((AggregateException) e.getCause()).getReasons());
+        }
+    }
+
+    @Test
+    public void testSomeSettlesEarly() throws Exception {
+        Deferred<Integer> a = deferred(), b = deferred(), c = deferred();
+        Promise<List<Integer>> two = some(2, new Object[] { a.promise(), b.promise(), c.promise() });
+        c.resolver().resolve(3);
+        a.resolver().resolve(1);
+        assertEquals(asList(3, 1), two.future().get());
+        assertTrue(b.promise().isCancelled());
+
+        // decided before the last input was even listened to, so it is left alone
+        Deferred<Integer> d = deferred();
+        Promise<List<Integer>> failed = some(2, new Object[] { reject(new Exception()), reject(new Exception()), d.promise() });
+        assertTrue(failed.future().isDone());
+        assertTrue(!d.promise().isCancelled());
+    }
+
+    @Test
+    public void testRaceKeepsSharedLosers() throws Exception {
+        Deferred<String> fetch = deferred();
+        Promise<String> cached = fetch.promise().then(s -> value(s));
+        Promise<String> race = race(new Object[] { fetch.promise(), delay("timeout", 10, TimeUnit.MILLISECONDS) });
+        assertEquals("timeout", race.future().get());
+        assertTrue(!fetch.promise().isCancelled());
+        fetch.resolver().resolve("fetched");
+        assertEquals("fetched", cached.future().get());
+    }
+
+    @Test
+    public void testAllSettled() throws Exception {
+        Exception reason = new Exception();
+        Deferred<String> pending = deferred();
+        Promise<SettledResults<String>> settled = allSettled(new Object[] { "a", reject(reason), pending.promise() });
+        pending.resolver().resolve("c");
+        SettledResults<String> results = settled.future().get();
+        assertEquals(3, results.size());
+        assertTrue(results.isRejected(1));
+        assertSame(reason, results.reason(1));
+        assertEquals(asList("a", "c"), results.fulfilled());
+
+        SettledResults<Integer> lengths = allSettled(asList("ab", resolve("abc"), reject(reason)),
+                (String s) -> s.length() > 2 ? reject(new IllegalStateException()) : value(s.length())).future().get();
+        assertEquals(Integer.valueOf(2), lengths.value(0));
+        assertTrue(lengths.reason(1) instanceof IllegalStateException);
+        assertSame(reason, lengths.reason(2));
+        assertEquals(0, allSettled(new Object[0]).future().get().size());
+
+        Deferred<String> unexplained = deferred();
+        unexplained.resolver().reject(null);
+        Promise<SettledResults<String>> withNull = allSettled(new Object[] { unexplained.promise(), "b" });
+        SettledResults<String> nullReason = withNull.future().get();
+        assertTrue(nullReason.isRejected(0));
+        assertSame(null, nullReason.reason(0));
+        assertEquals(asList("b"), nullReason.fulfilled());
+        assertEquals(1, nullReason.rejected().size());
+        assertEquals(0, allSettled((List<Object>) null).future().get().size());
+    }
+
+    @Test
+    public void testAllSettledKeepsSharedInputs() throws Exception {
+        Deferred<String> fetch = deferred(), lone = deferred();
+        Promise<String> cached = fetch.promise().then(s -> value(s));
+        Promise<SettledResults<String>> settled = allSettled(new Object[] { fetch.promise(), lone.promise() });
+        settled.cancel();
+        assertTrue(!fetch.promise().isCancelled());
+        assertTrue(lone.promise().isCancelled());
+        fetch.resolver().resolve("fetched");
+        assertEquals("fetched", cached.future().get());
+    }
+
+    @Test
+    public void testBatcherCoalescesLoads() throws Exception {
+        List<List<Integer>> calls = new CopyOnWriteArrayList<>();
+        Batcher<Integer, String> batcher = batcher(keys -> {
+            calls.add(keys);
+            Map<Integer, String> values = new HashMap<>();
+            for (Integer key : keys)
+                values.put(key, "v" + key);
+            return resolve(value(values));
+        }, 3, 1, TimeUnit.HOURS);
+
+        Promise<String> one = batcher.load(1);
+        Promise<String> sameOne = batcher.load(1);
+        Promise<String> two = batcher.load(2);
+        assertTrue(calls.isEmpty());
+        batcher.dispatch();
+        assertEquals(asList(asList(1, 2)), calls);
+        assertEquals("v1", one.future().get());
+        assertSame(one, sameOne);
+        assertEquals("v2", two.future().get());
+
+        assertEquals(asList("v3", "v4", "v5"), batcher.loadAll(asList(3, 4, 5)).future().get());
+        assertEquals(asList(3, 4, 5), calls.get(1));
+    }
+
+    @Test
+    public void testBatcherLoaderThreadAndNullResult() throws Exception {
+        List<String> threads = new CopyOnWriteArrayList<>();
+        Batcher<String, String> batcher = batcher(keys -> {
+            threads.add(Thread.currentThread().getName());
+            return null;
+        }, 10, 5, TimeUnit.MILLISECONDS);
+        Promise<String> a = batcher.load("a"), b = batcher.load("b");
+        for (Promise<String> key : asList(a, b))
+            try {
+                key.future().get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof NullPointerException);
+            }
+        assertEquals(1, threads.size());
+        assertTrue(threads.get(0), !threads.get(0).contains("timer"));
+
+        // a full batch is not loaded on the thread of the load which filled it
+        Batcher<String, String> full = batcher(keys -> {
+            threads.add(Thread.currentThread().getName());
+            return resolve(value(new HashMap<String, String>()));
+        }, 1, 1, TimeUnit.HOURS);
+        assertEquals(null, full.load("c").future().get(5, TimeUnit.SECONDS));
+        assertEquals(2, threads.size());
+        assertTrue(threads.get(1), !threads.get(1).equals(Thread.currentThread().getName()));
+    }
+
+    @Test
+    public void testBatcherDispatchesOnNextTick() throws Exception {
+        Exception reason = new Exception();
+        Batcher<String, String> batcher = batcher(keys -> reject(reason));
+        try {
+            batcher.load("a").future().get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(reason, e.getCause());
+        }
+    }
+
+    @Test
+    public void testPromiseCacheSingleFlight() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        Map<String, Deferred<Integer>> pending = new ConcurrentHashMap<>();
+        PromiseCache<String, Integer> cache = PromiseCache.builder().build(key -> {
+            loads.incrementAndGet();
+            Deferred<Integer> deferred = deferred();
+            pending.put(key, deferred);
+            return deferred.promise();
+        });
+
+        Promise<Integer> first = cache.get("a");
+        assertSame(first, cache.get("a"));
+        assertEquals(1, loads.get());
+        pending.get("a").resolver().resolve(1);
+        assertEquals(Integer.valueOf(1), first.future().get());
+        assertSame(first, cache.get("a"));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        Promise<Integer> failed = cache.get("b");
+        pending.get("b").resolver().reject(new Exception());
+        assertTrue(failed.future().isDone());
+        assertTrue(failed != cache.get("b"));
+        assertEquals(1, cache.getLoadFailures());
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testPromiseCacheNullLoad() throws Exception {
+        PromiseCache<String, String> cache = PromiseCache.builder().build((String key) -> null);
+        try {
+            cache.get("a").future().get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof NullPointerException);
+        }
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testPromiseCacheEviction() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        long[] now = { 0 };
+        PromiseCache<Integer, Integer> cache = PromiseCache.builder()
+                .maximumSize(2)
+                .expireAfterWrite(10, TimeUnit.NANOSECONDS)
+                .ticker(() -> now[0])
+                .build((Integer key) -> {
+                    loads.incrementAndGet();
+                    return value(key * 2);
+                });
+
+        assertEquals(Integer.valueOf(2), cache.get(1).future().get());
+        cache.get(2);
+        cache.get(1);
+        cache.get(3);
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, loads.get());
+        cache.get(1);
+        assertEquals(3, loads.get());
+        cache.get(2);
+        assertEquals(4, loads.get());
+
+        now[0] = 10;
+        cache.get(2);
+        assertEquals(5, loads.get());
+    }
+
+    @Test
+    public void testRetryWithBackoff() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        RetryPolicy policy = RetryPolicy.builder()
+                .maxAttempts(4)
+                .backoff(1, 10, TimeUnit.MILLISECONDS)
+                .jitter(0.5)
+                .retryOn(IllegalStateException.class)
+                .build();
+
+        List<String> threads = new CopyOnWriteArrayList<>();
+        Promise<String> retried = retry(() -> {
+            threads.add(Thread.currentThread().getName());
+            return attempts.incrementAndGet() < 3 ? reject(new IllegalStateException()) : resolve("ok");
+        }, policy);
+        assertEquals("ok", retried.future().get(5, TimeUnit.SECONDS));
+        assertEquals(3, attempts.get());
+        assertTrue(threads.toString(), threads.stream().noneMatch(name -> name.contains("timer")));
+
+        attempts.set(0);
+        Exception fatal = new Exception();
+        try {
+            retry(() -> {
+                attempts.incrementAndGet();
+                return reject(fatal);
+            }, policy).future().get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(fatal, e.getCause());
+        }
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void testRetryWithoutDelay() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        List<String> threads = new CopyOnWriteArrayList<>();
+        Promise<Object> exhausted = retry(() -> {
+            attempts.incrementAndGet();
+            threads.add(Thread.currentThread().getName());
+            return reject(new IllegalStateException());
+        }, RetryPolicy.builder().maxAttempts(100000).backoff(0, 0, TimeUnit.MILLISECONDS).build());
+        try {
+            exhausted.future().get(30, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(100000, attempts.get());
+        assertTrue(threads.stream().noneMatch(name -> name.contains("timer")));
+
+        try {
+            retry(() -> null, RetryPolicy.builder().maxAttempts(2).backoff(0, 0, TimeUnit.MILLISECONDS).build()).
+                    future().get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof NullPointerException);
+        }
+    }
+
+    @Test
+    public void testRetryGivesUp() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        Promise<Object> exhausted = retry(() -> {
+            attempts.incrementAndGet();
+            return reject(new IllegalStateException());
+        }, RetryPolicy.builder().maxAttempts(3).backoff(1, 1, TimeUnit.MILLISECONDS).build());
+        try {
+            exhausted.future().get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(3, attempts.get());
+
+        Promise<Object> late = retry(() -> reject(new IllegalStateException()),
+                RetryPolicy.builder().maxAttempts(100).backoff(1, 1, TimeUnit.HOURS).deadline(1, TimeUnit.MINUTES).build());
+        assertTrue(late.future().isDone());
+    }
+
+    @Test
+    public void testRetryDeadlineBoundsRunningAttempt() throws Exception {
+        Deferred<Object> slow = deferred();
+        Promise<Object> bounded = retry(slow::promise,
+                RetryPolicy.builder().maxAttempts(3).deadline(50, TimeUnit.MILLISECONDS).build());
+        try {
+            bounded.future().get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(slow.promise().isCancelled());
+    }
+
     private void assertFulfillment(Promise<Boolean> promise, boolean expected) throws ExecutionException, InterruptedException {
         AtomicBoolean fulfilled = new AtomicBoolean(expected);
 